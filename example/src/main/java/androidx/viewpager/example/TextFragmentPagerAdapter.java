@@ -6,18 +6,19 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
-import androidx.fragment.app.FragmentPagerAdapter;
 import androidx.viewpager.widget.PagerAdapter;
 
+import com.fiberthemax.viewswitcher.ViewReleasingFragmentPagerAdapter;
+
 import java.util.ArrayList;
 import java.util.List;
 
-public class TextFragmentPagerAdapter extends FragmentPagerAdapter {
+public class TextFragmentPagerAdapter extends ViewReleasingFragmentPagerAdapter {
 
     private List<String> list = new ArrayList<>();
 
     public TextFragmentPagerAdapter(FragmentManager fm) {
-        super(fm, BEHAVIOR_RESUME_ONLY_CURRENT_FRAGMENT);
+        super(fm);
     }
 
     @NonNull
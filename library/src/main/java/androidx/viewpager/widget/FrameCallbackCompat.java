@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import androidx.core.view.ViewCompat;
+
+/**
+ * A one-shot callback for the start of the next frame. Uses {@link Choreographer} where it is
+ * available and falls back to {@link ViewCompat#postOnAnimation(View, Runnable)} otherwise, in
+ * which case the frame time is approximated by the time the callback runs.
+ *
+ * <p>Posting an already posted callback is a no-op, so callers can post freely.</p>
+ */
+abstract class FrameCallbackCompat implements Runnable {
+    private Object mFrameCallback;
+    private View mPostedView;
+    private boolean mPosted;
+
+    /**
+     * Called at the start of a frame.
+     *
+     * @param frameTimeNanos The time at which the frame started, in the
+     *                       {@link System#nanoTime()} time base.
+     */
+    abstract void doFrame(long frameTimeNanos);
+
+    final boolean isPosted() {
+        return mPosted;
+    }
+
+    final void post(@NonNull View view) {
+        if (mPosted) {
+            return;
+        }
+        mPosted = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mFrameCallback == null) {
+                mFrameCallback = Api16Impl.createFrameCallback(this);
+            }
+            Api16Impl.postFrameCallback(mFrameCallback);
+        } else {
+            mPostedView = view;
+            ViewCompat.postOnAnimation(view, this);
+        }
+    }
+
+    final void cancel() {
+        if (!mPosted) {
+            return;
+        }
+        mPosted = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            Api16Impl.removeFrameCallback(mFrameCallback);
+        } else if (mPostedView != null) {
+            mPostedView.removeCallbacks(this);
+        }
+        mPostedView = null;
+    }
+
+    @Override
+    public final void run() {
+        dispatchFrame(System.nanoTime());
+    }
+
+    final void dispatchFrame(long frameTimeNanos) {
+        if (!mPosted) {
+            return;
+        }
+        mPosted = false;
+        mPostedView = null;
+        doFrame(frameTimeNanos);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class Api16Impl {
+        static Object createFrameCallback(final FrameCallbackCompat callback) {
+            return new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    callback.dispatchFrame(frameTimeNanos);
+                }
+            };
+        }
+
+        static void postFrameCallback(Object frameCallback) {
+            Choreographer.getInstance().postFrameCallback(
+                    (Choreographer.FrameCallback) frameCallback);
+        }
+
+        static void removeFrameCallback(Object frameCallback) {
+            Choreographer.getInstance().removeFrameCallback(
+                    (Choreographer.FrameCallback) frameCallback);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.OperationCanceledException;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The data preloaded for the pages of a {@link ViewSwitcher} by its
+ * {@link ViewSwitcher.PageDataPreloader}, keyed by stable id. Holds at most a fixed number of
+ * entries, loaded or still loading; the least recently requested one is cancelled or dropped
+ * when the cache is full. Loads run on the ViewSwitcher's {@link PageWorkScheduler}.
+ */
+final class PageDataPreloadCache {
+    static final int DEFAULT_MAX_SIZE = 3;
+
+    private final ViewSwitcher mViewSwitcher;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Access ordered, so iteration starts at the least recently requested entry.
+     */
+    private final LinkedHashMap<Long, Entry> mEntries = new LinkedHashMap<>(8, 0.75f, true);
+    private PageWorkScheduler mScheduler;
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+
+    PageDataPreloadCache(@NonNull ViewSwitcher viewSwitcher) {
+        mViewSwitcher = viewSwitcher;
+    }
+
+    void setScheduler(@NonNull PageWorkScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    @NonNull
+    PageWorkScheduler getScheduler() {
+        if (mScheduler == null) {
+            mScheduler = PageWorkScheduler.getDefault();
+        }
+        return mScheduler;
+    }
+
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Start loading the data for the item, unless it is already loaded or loading, in which case
+     * the load is promoted to the given priority if it has not started yet.
+     */
+    void preload(@NonNull ViewSwitcher.PageDataPreloader preloader, int position, long itemId,
+                 @PageWorkScheduler.Priority int priority) {
+        if (mMaxSize == 0) {
+            return;
+        }
+        // get() also marks an existing entry as the most recently requested.
+        final Entry existing = mEntries.get(itemId);
+        if (existing != null) {
+            existing.mTask.promote(priority);
+            return;
+        }
+        trimToSize(mMaxSize - 1);
+        final Entry entry = new Entry(preloader, position, itemId);
+        mEntries.put(itemId, entry);
+        entry.mTask = getScheduler().submit(mViewSwitcher, position, priority, entry);
+    }
+
+    /**
+     * Raise the priority of the item's load if it has not started yet.
+     */
+    void promote(long itemId, @PageWorkScheduler.Priority int priority) {
+        final Entry entry = mEntries.isEmpty() ? null : mEntries.get(itemId);
+        if (entry != null) {
+            entry.mTask.promote(priority);
+        }
+    }
+
+    /**
+     * Hands the data preloaded for the item to its newly created page. If the data is still
+     * loading, it is handed over once loaded, provided the page is still alive then.
+     */
+    void bind(@NonNull ViewSwitcher.PageDataPreloader preloader, int position, long itemId,
+              @NonNull Object page) {
+        final Entry entry = mEntries.get(itemId);
+        if (entry == null) {
+            return;
+        }
+        if (entry.mLoaded) {
+            mEntries.remove(itemId);
+            preloader.onBindPreloadedData(mViewSwitcher, position, page, entry.mData);
+        } else {
+            entry.mWaitingPage = page;
+        }
+    }
+
+    /**
+     * Stops waiting to hand data to a page that was destroyed, so the cache does not keep it
+     * alive. The data stays cached for the next page created for the item.
+     */
+    void onPageDestroyed(@NonNull Object page) {
+        for (Entry entry : mEntries.values()) {
+            if (entry.mWaitingPage == page) {
+                entry.mWaitingPage = null;
+            }
+        }
+    }
+
+    void cancelAll() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(int maxSize) {
+        final Iterator<Entry> it = mEntries.values().iterator();
+        while (mEntries.size() > Math.max(0, maxSize) && it.hasNext()) {
+            final Entry entry = it.next();
+            it.remove();
+            entry.mSignal.cancel();
+            entry.mTask.cancel();
+        }
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        int loaded = 0;
+        int waiting = 0;
+        for (Entry entry : mEntries.values()) {
+            loaded += entry.mLoaded ? 1 : 0;
+            waiting += entry.mWaitingPage != null ? 1 : 0;
+        }
+        writer.print(prefix);
+        writer.print("preloads: entries=");
+        writer.print(mEntries.size());
+        writer.print("/");
+        writer.print(mMaxSize);
+        writer.print(" loaded=");
+        writer.print(loaded);
+        writer.print(" waitingPages=");
+        writer.println(waiting);
+        if (mScheduler != null) {
+            writer.print(prefix);
+            writer.print("scheduler: queued=");
+            writer.print(mScheduler.getQueueDepth());
+            writer.print(" running=");
+            writer.print(mScheduler.getRunningCount());
+            writer.print(" avgWaitMs(current)=");
+            writer.print(mScheduler.getAverageWaitMillis(PageWorkScheduler.PRIORITY_CURRENT));
+            writer.print(" maxWaitMs(current)=");
+            writer.println(mScheduler.getMaxWaitMillis(PageWorkScheduler.PRIORITY_CURRENT));
+        }
+    }
+
+    void onPreloadFinished(@NonNull Entry entry, @Nullable Object data) {
+        if (entry.mSignal.isCanceled() || mEntries.get(entry.mItemId) != entry) {
+            return;
+        }
+        entry.mLoaded = true;
+        entry.mData = data;
+        final Object page = entry.mWaitingPage;
+        if (page == null) {
+            return;
+        }
+        entry.mWaitingPage = null;
+        final int position = mViewSwitcher.positionForLivePage(page);
+        if (position >= 0) {
+            mEntries.remove(entry.mItemId);
+            entry.mPreloader.onBindPreloadedData(mViewSwitcher, position, page, data);
+        }
+    }
+
+    final class Entry implements Runnable {
+        final ViewSwitcher.PageDataPreloader mPreloader;
+        final int mPosition;
+        final long mItemId;
+        final CancellationSignal mSignal = new CancellationSignal();
+        // Only touched on the main thread.
+        PageWorkScheduler.Task mTask;
+        boolean mLoaded;
+        Object mData;
+        Object mWaitingPage;
+
+        Entry(@NonNull ViewSwitcher.PageDataPreloader preloader, int position, long itemId) {
+            mPreloader = preloader;
+            mPosition = position;
+            mItemId = itemId;
+        }
+
+        @Override
+        public void run() {
+            if (mSignal.isCanceled()) {
+                return;
+            }
+            final Object data;
+            try {
+                data = mPreloader.onPreloadData(mPosition, mSignal);
+            } catch (OperationCanceledException e) {
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onPreloadFinished(Entry.this, data);
+                }
+            });
+        }
+    }
+}
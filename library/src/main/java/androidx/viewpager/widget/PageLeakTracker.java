@@ -0,0 +1,323 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A debugging aid that verifies the pages destroyed by a {@link ViewSwitcher} can be garbage
+ * collected. Every page returned by the adapter is tracked through a weak reference; after the
+ * adapter has been asked to destroy a page, nothing should keep it reachable.
+ *
+ * <p>Install a tracker with {@link ViewSwitcher#setPageLeakTracker(PageLeakTracker)}, exercise
+ * the ViewSwitcher, then call {@link #findRetainedPages(Object...)}. Finding retained pages
+ * forces garbage collections and walks object fields reflectively, so it is slow and meant for
+ * tests and debug builds only.</p>
+ */
+public final class PageLeakTracker {
+    private static final int GC_ATTEMPTS = 5;
+    private static final long GC_WAIT = 100; // ms
+    private static final int MAX_VISITED_OBJECTS = 100000;
+
+    private final ReferenceQueue<Object> mQueue = new ReferenceQueue<>();
+    private final ArrayList<PageReference> mPages = new ArrayList<>();
+    private int mInstantiatedCount;
+    private int mDestroyedCount;
+
+    /**
+     * A destroyed page that could not be garbage collected.
+     */
+    public static final class RetainedPage {
+        private final String mDescription;
+        private final int mPosition;
+        private final String mReferencePath;
+
+        RetainedPage(String description, int position, String referencePath) {
+            mDescription = description;
+            mPosition = position;
+            mReferencePath = referencePath;
+        }
+
+        /**
+         * Returns the class and identity of the page object.
+         */
+        @NonNull
+        public String getDescription() {
+            return mDescription;
+        }
+
+        /**
+         * Returns the position the page was instantiated for.
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+
+        /**
+         * Returns a chain of fields from one of the roots to the page, or null if none of the
+         * roots reaches it.
+         */
+        @Nullable
+        public String getReferencePath() {
+            return mReferencePath;
+        }
+
+        @Override
+        public String toString() {
+            return mDescription + " (position " + mPosition + ") retained by "
+                    + (mReferencePath != null ? mReferencePath : "an unknown path");
+        }
+    }
+
+    private static final class PageReference extends WeakReference<Object> {
+        final String description;
+        final int position;
+        boolean destroyed;
+
+        PageReference(Object page, int position, ReferenceQueue<Object> queue) {
+            super(page, queue);
+            this.description = describe(page);
+            this.position = position;
+        }
+    }
+
+    void onPageInstantiated(int position, @NonNull Object page) {
+        purge();
+        mInstantiatedCount++;
+        mPages.add(new PageReference(page, position, mQueue));
+    }
+
+    void onPageDestroyed(@NonNull Object page) {
+        purge();
+        mDestroyedCount++;
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            final PageReference ref = mPages.get(i);
+            if (!ref.destroyed && ref.get() == page) {
+                ref.destroyed = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pages instantiated since the tracker was installed.
+     */
+    public int getInstantiatedCount() {
+        return mInstantiatedCount;
+    }
+
+    /**
+     * Returns the number of pages destroyed since the tracker was installed.
+     */
+    public int getDestroyedCount() {
+        return mDestroyedCount;
+    }
+
+    /**
+     * Returns the number of tracked pages that were instantiated and not destroyed yet.
+     */
+    public int getLivePageCount() {
+        int count = 0;
+        for (int i = 0, z = mPages.size(); i < z; i++) {
+            final PageReference ref = mPages.get(i);
+            if (!ref.destroyed && ref.get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forces garbage collection and returns the destroyed pages that are still reachable.
+     *
+     * @param roots Objects to search for a reference path to each retained page, typically the
+     *              ViewSwitcher, its adapter and its mediators
+     * @return The retained pages, empty if every destroyed page was collected
+     */
+    @NonNull
+    public List<RetainedPage> findRetainedPages(@NonNull Object... roots) {
+        for (int i = 0; i < GC_ATTEMPTS && hasDestroyedPages(); i++) {
+            runGc();
+            purge();
+        }
+        final List<RetainedPage> retained = new ArrayList<>();
+        for (int i = 0, z = mPages.size(); i < z; i++) {
+            final PageReference ref = mPages.get(i);
+            final Object page = ref.get();
+            if (ref.destroyed && page != null) {
+                retained.add(new RetainedPage(ref.description, ref.position,
+                        findReferencePath(roots, page)));
+            }
+        }
+        return retained;
+    }
+
+    private boolean hasDestroyedPages() {
+        for (int i = 0, z = mPages.size(); i < z; i++) {
+            if (mPages.get(i).destroyed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void purge() {
+        Reference<?> ref;
+        while ((ref = mQueue.poll()) != null) {
+            mPages.remove(ref);
+        }
+    }
+
+    private static void runGc() {
+        // System.gc() is only a hint, give the collector and the reference queue some time.
+        Runtime.getRuntime().gc();
+        try {
+            Thread.sleep(GC_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.runFinalization();
+    }
+
+    static String describe(@NonNull Object object) {
+        return object.getClass().getName() + "@"
+                + Integer.toHexString(System.identityHashCode(object));
+    }
+
+    /**
+     * Breadth first search through the fields of the roots, so the shortest path is found.
+     */
+    @Nullable
+    static String findReferencePath(@NonNull Object[] roots, @NonNull Object target) {
+        final Set<Object> visited =
+                Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        final ArrayDeque<PathNode> queue = new ArrayDeque<>();
+        for (Object root : roots) {
+            if (root != null && visited.add(root)) {
+                queue.add(new PathNode(root, null, root.getClass().getSimpleName()));
+            }
+        }
+        while (!queue.isEmpty() && visited.size() < MAX_VISITED_OBJECTS) {
+            final PathNode node = queue.poll();
+            if (node.object == target) {
+                return node.path();
+            }
+            for (PathNode child : node.children()) {
+                if (visited.add(child.object)) {
+                    queue.add(child);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class PathNode {
+        final Object object;
+        final PathNode parent;
+        final String edge;
+
+        PathNode(Object object, PathNode parent, String edge) {
+            this.object = object;
+            this.parent = parent;
+            this.edge = edge;
+        }
+
+        String path() {
+            final StringBuilder sb = new StringBuilder();
+            for (PathNode node = this; node != null; node = node.parent) {
+                sb.insert(0, node.parent != null ? " -> " + node.edge : node.edge);
+            }
+            return sb.toString();
+        }
+
+        List<PathNode> children() {
+            final List<PathNode> children = new ArrayList<>();
+            if (object instanceof Reference || object instanceof Class
+                    || object instanceof CharSequence || object instanceof Number) {
+                // Weak references don't retain, and the others don't lead to pages.
+                return children;
+            }
+            if (object instanceof Object[]) {
+                final Object[] array = (Object[]) object;
+                for (int i = 0; i < array.length; i++) {
+                    addChild(children, array[i], "[" + i + "]");
+                }
+                return children;
+            }
+            if (object.getClass().isArray()) {
+                return children;
+            }
+            final boolean platformClass = object.getClass().getName().startsWith("java.");
+            try {
+                if (platformClass && object instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                        addChild(children, entry.getKey(), "key");
+                        addChild(children, entry.getValue(), "[" + entry.getKey() + "]");
+                    }
+                    return children;
+                }
+                if (platformClass && object instanceof Iterable) {
+                    int i = 0;
+                    for (Iterator<?> it = ((Iterable<?>) object).iterator(); it.hasNext(); i++) {
+                        addChild(children, it.next(), "[" + i + "]");
+                    }
+                    return children;
+                }
+            } catch (RuntimeException e) {
+                // Modified concurrently, don't follow it.
+                return children;
+            }
+            for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())
+                            || field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        addChild(children, field.get(object),
+                                c.getSimpleName() + "." + field.getName());
+                    } catch (RuntimeException | IllegalAccessException e) {
+                        // Inaccessible platform internals, skip them.
+                    }
+                }
+            }
+            return children;
+        }
+
+        private void addChild(List<PathNode> children, Object child, String edge) {
+            if (child != null) {
+                children.add(new PathNode(child, this, edge));
+            }
+        }
+    }
+}
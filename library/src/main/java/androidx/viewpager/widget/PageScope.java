@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.core.os.CancellationSignal;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The scope of one page of a {@link ViewSwitcher}, cancelled as soon as the page is destroyed
+ * or the ViewSwitcher's adapter is replaced. Work a page starts, such as network calls, image
+ * loads or timers, should be tied to its scope so that it stops at switch time instead of
+ * running on and writing into detached views.
+ *
+ * <p>The scope is a {@link LifecycleOwner}: it is {@link Lifecycle.State#RESUMED} while its page
+ * is the current one, {@link Lifecycle.State#CREATED} while the page is alive but not shown and
+ * {@link Lifecycle.State#DESTROYED} once cancelled. Obtain it with
+ * {@link ViewSwitcher#getPageScope(int)}, from the adapter's {@code instantiateItem} onwards.</p>
+ */
+public final class PageScope implements LifecycleOwner {
+    private final LifecycleRegistry mLifecycle = new LifecycleRegistry(this);
+    private final CancellationSignal mCancellationSignal = new CancellationSignal();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mMainExecutor = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            postDelayed(command, 0);
+        }
+    };
+    private volatile boolean mCancelled;
+
+    PageScope() {
+        mLifecycle.setCurrentState(Lifecycle.State.CREATED);
+    }
+
+    @NonNull
+    @Override
+    public Lifecycle getLifecycle() {
+        return mLifecycle;
+    }
+
+    /**
+     * Returns a signal that is cancelled with the scope, to pass to cancellable operations.
+     */
+    @NonNull
+    public CancellationSignal getCancellationSignal() {
+        return mCancellationSignal;
+    }
+
+    /**
+     * Returns true once the page has been destroyed. Safe to call from any thread.
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Wraps an executor so that work submitted through it is dropped once the scope is
+     * cancelled, whether it is submitted after that or still waiting to run. Work that is
+     * already running should check {@link #isCancelled()} or the cancellation signal.
+     */
+    @NonNull
+    public Executor wrap(@NonNull final Executor executor) {
+        return new Executor() {
+            @Override
+            public void execute(@NonNull final Runnable command) {
+                if (mCancelled) {
+                    return;
+                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mCancelled) {
+                            command.run();
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Returns an executor running work on the main thread, typically to deliver results to the
+     * page's views. Work still queued when the scope is cancelled is removed.
+     */
+    @NonNull
+    public Executor getMainExecutor() {
+        return mMainExecutor;
+    }
+
+    /**
+     * Runs the given work on the main thread after a delay, unless the scope is cancelled first.
+     * Safe to call from any thread.
+     */
+    public void postDelayed(@NonNull Runnable work, long delayMillis) {
+        if (!mCancelled) {
+            mMainHandler.postAtTime(work, this, SystemClock.uptimeMillis() + delayMillis);
+        }
+    }
+
+    @MainThread
+    void setResumed(boolean resumed) {
+        if (!mCancelled) {
+            mLifecycle.setCurrentState(resumed ? Lifecycle.State.RESUMED : Lifecycle.State.CREATED);
+        }
+    }
+
+    @MainThread
+    void cancel() {
+        if (mCancelled) {
+            return;
+        }
+        mCancelled = true;
+        mMainHandler.removeCallbacksAndMessages(this);
+        mCancellationSignal.cancel();
+        mLifecycle.setCurrentState(Lifecycle.State.DESTROYED);
+    }
+}
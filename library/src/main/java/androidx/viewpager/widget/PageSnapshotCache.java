@@ -0,0 +1,333 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+import android.view.View;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.os.ConfigurationCompat;
+import androidx.core.util.AtomicFile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persists a snapshot of the current page of a {@link ViewSwitcher} across launches, so that on a
+ * cold start the page the user left can be shown right away while the real one is being created.
+ *
+ * <p>Install a cache with {@link ViewSwitcher#setPageSnapshotCache(PageSnapshotCache)} before the
+ * first layout. The current page is drawn and saved whenever the ViewSwitcher's window is hidden,
+ * typically as the app goes to the background; the image is compressed and written on the
+ * {@link PageWorkScheduler} at housekeeping priority. On the next start, the snapshot stands in
+ * for the {@link ViewSwitcher#setPagePlaceholder(View) placeholder} while the first page is
+ * {@link ViewSwitcher#setDeferInitialPopulate(boolean) deferred} or built by a
+ * {@link ViewSwitcher.PageBuilder}, and is removed once the real page has drawn.</p>
+ *
+ * <p>The page is drawn in software on the main thread, at half its size in each dimension, so
+ * saving costs about a quarter of a software frame of the page and a bitmap of that size until it
+ * is written. Only the latest snapshot is written; one taken while the previous is still being
+ * written replaces any that is waiting.</p>
+ *
+ * <p>Snapshots are keyed by the page's stable id, see {@link ViewSwitcher.StableIdProvider}. A
+ * snapshot taken at another size or in another configuration, such as orientation, density,
+ * night mode, font scale or locale, is deleted instead of shown.</p>
+ */
+public final class PageSnapshotCache {
+    private static final String TAG = "PageSnapshotCache";
+
+    private static final int FILE_MAGIC = 0x50534e31;
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 4 + 4;
+    private static final int QUALITY = 80;
+    private static final float SCALE = 0.5f;
+
+    private final AtomicFile mFile;
+    private PageWorkScheduler mScheduler;
+
+    private final Object mLock = new Object();
+    /**
+     * The snapshot waiting to be written, replaced by newer ones.
+     */
+    private Snapshot mPendingSnapshot;
+    /**
+     * True while a write is queued or running. There is only ever one, so that two writes never
+     * race on the file.
+     */
+    private boolean mWriting;
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    /**
+     * @param file The file the snapshot is persisted to, typically in the app's cache directory.
+     */
+    public PageSnapshotCache(@NonNull File file) {
+        mFile = new AtomicFile(file);
+    }
+
+    /**
+     * Set the scheduler the snapshot is written on, {@link PageWorkScheduler#getDefault()} by
+     * default.
+     */
+    public void setScheduler(@NonNull PageWorkScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Delete the persisted snapshot, for example when the content it shows is no longer valid.
+     */
+    public void clear() {
+        mFile.delete();
+    }
+
+    /**
+     * Draws the page at a reduced size and writes it in the background.
+     */
+    @MainThread
+    void save(long itemId, @NonNull View page, @NonNull Configuration configuration) {
+        final int width = page.getWidth();
+        final int height = page.getHeight();
+        final int scaledWidth = Math.max(1, Math.round(width * SCALE));
+        final int scaledHeight = Math.max(1, Math.round(height * SCALE));
+        final Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+            final Canvas canvas = new Canvas(bitmap);
+            canvas.scale((float) scaledWidth / width, (float) scaledHeight / height);
+            page.draw(canvas);
+        } catch (IllegalArgumentException | OutOfMemoryError e) {
+            // Hardware bitmaps can't be drawn in software, keep the previous snapshot.
+            Log.w(TAG, "Could not draw the page snapshot", e);
+            return;
+        }
+        final Snapshot snapshot = new Snapshot(itemId, width, height,
+                configurationKey(configuration), bitmap);
+        synchronized (mLock) {
+            if (mPendingSnapshot != null) {
+                mPendingSnapshot.mBitmap.recycle();
+            }
+            mPendingSnapshot = snapshot;
+            if (mWriting) {
+                // Picked up by the write in progress.
+                return;
+            }
+            mWriting = true;
+        }
+        if (mScheduler == null) {
+            mScheduler = PageWorkScheduler.getDefault();
+        }
+        mScheduler.submit(this, -1, PageWorkScheduler.PRIORITY_HOUSEKEEPING, mWriteRunnable);
+    }
+
+    @WorkerThread
+    private void writePending() {
+        boolean done = false;
+        try {
+            while (true) {
+                final Snapshot snapshot;
+                synchronized (mLock) {
+                    snapshot = mPendingSnapshot;
+                    mPendingSnapshot = null;
+                    if (snapshot == null) {
+                        mWriting = false;
+                        done = true;
+                        return;
+                    }
+                }
+                write(snapshot.mItemId, snapshot.mWidth, snapshot.mHeight,
+                        snapshot.mConfigurationKey, snapshot.mBitmap);
+            }
+        } finally {
+            if (!done) {
+                synchronized (mLock) {
+                    mWriting = false;
+                }
+            }
+        }
+    }
+
+    @WorkerThread
+    void write(long itemId, int width, int height, int configurationKey,
+               @NonNull Bitmap bitmap) {
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(FILE_MAGIC);
+            data.writeLong(itemId);
+            data.writeInt(width);
+            data.writeInt(height);
+            data.writeInt(configurationKey);
+            bitmap.compress(Bitmap.CompressFormat.WEBP, QUALITY, data);
+            data.flush();
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the page snapshot", e);
+            if (out != null) {
+                mFile.failWrite(out);
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Returns the snapshot saved for the item, or null if there is none or it was taken at
+     * another size or in another configuration. The file is memory mapped and decoded in place,
+     * so this is fast enough to be called during the first layout. The bitmap is smaller than the
+     * page, {@link SnapshotView} scales it up.
+     */
+    @Nullable
+    Bitmap load(long itemId, int width, int height, @NonNull Configuration configuration) {
+        FileInputStream in = null;
+        try {
+            in = mFile.openRead();
+            final FileChannel channel = in.getChannel();
+            final MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != FILE_MAGIC) {
+                clear();
+                return null;
+            }
+            final long savedItemId = buffer.getLong();
+            final int savedWidth = buffer.getInt();
+            final int savedHeight = buffer.getInt();
+            final int savedConfigurationKey = buffer.getInt();
+            if (savedWidth != width || savedHeight != height
+                    || savedConfigurationKey != configurationKey(configuration)) {
+                // It would never match again.
+                clear();
+                return null;
+            }
+            if (savedItemId != itemId) {
+                return null;
+            }
+            return BitmapFactory.decodeStream(new ByteBufferInputStream(buffer));
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read the page snapshot", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    static int configurationKey(@NonNull Configuration configuration) {
+        int key = configuration.orientation;
+        key = 31 * key + configuration.densityDpi;
+        key = 31 * key + configuration.uiMode;
+        key = 31 * key + Float.floatToIntBits(configuration.fontScale);
+        key = 31 * key + ConfigurationCompat.getLocales(configuration).toLanguageTags().hashCode();
+        return key;
+    }
+
+    private static final class Snapshot {
+        final long mItemId;
+        final int mWidth;
+        final int mHeight;
+        final int mConfigurationKey;
+        final Bitmap mBitmap;
+
+        Snapshot(long itemId, int width, int height, int configurationKey,
+                 @NonNull Bitmap bitmap) {
+            mItemId = itemId;
+            mWidth = width;
+            mHeight = height;
+            mConfigurationKey = configurationKey;
+            mBitmap = bitmap;
+        }
+    }
+
+    /**
+     * Reads a mapped file without copying it to the heap first.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer mBuffer;
+
+        ByteBufferInputStream(@NonNull ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, mBuffer.remaining());
+            mBuffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+    }
+
+    /**
+     * Shows a snapshot in place of the page, scaled up to the page's size.
+     */
+    static final class SnapshotView extends View {
+        private final Bitmap mSnapshot;
+        private final Rect mBounds = new Rect();
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        SnapshotView(@NonNull Context context, @NonNull Bitmap snapshot) {
+            super(context);
+            mSnapshot = snapshot;
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            mBounds.set(0, 0, getWidth(), getHeight());
+            canvas.drawBitmap(mSnapshot, null, mBounds, mPaint);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+
+import java.util.Arrays;
+
+/**
+ * The page states captured by a {@link ViewSwitcher} for its {@link ViewSwitcher.PageStateSaver}
+ * adapter, keyed by item id.
+ *
+ * <p>States are spread over a fixed number of segments by item id. {@link #snapshot()} hands out
+ * a copy that shares all segments, and a segment is only copied when either side changes it
+ * afterwards, so saving the instance state and hiding the next page copy one segment rather
+ * than every state captured so far.</p>
+ */
+final class PageStateStore {
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_SHIFT;
+
+    private final LongSparseArray<Parcelable>[] mSegments;
+    /**
+     * Set for the segments only this store holds, which can be changed in place.
+     */
+    private final boolean[] mOwned = new boolean[SEGMENT_COUNT];
+    private int mSize;
+
+    @SuppressWarnings("unchecked")
+    PageStateStore() {
+        mSegments = new LongSparseArray[SEGMENT_COUNT];
+    }
+
+    private PageStateStore(@NonNull PageStateStore source) {
+        mSegments = source.mSegments.clone();
+        mSize = source.mSize;
+    }
+
+    /**
+     * Returns a copy of this store that shares its segments until either of them changes.
+     */
+    @NonNull
+    PageStateStore snapshot() {
+        Arrays.fill(mOwned, false);
+        return new PageStateStore(this);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    @Nullable
+    Parcelable get(long itemId) {
+        final LongSparseArray<Parcelable> segment = mSegments[segmentOf(itemId)];
+        return segment != null ? segment.get(itemId) : null;
+    }
+
+    /**
+     * Set the state of the item, or remove it if state is null.
+     */
+    void put(long itemId, @Nullable Parcelable state) {
+        final int index = segmentOf(itemId);
+        final LongSparseArray<Parcelable> segment = mSegments[index];
+        final boolean contains = segment != null && segment.indexOfKey(itemId) >= 0;
+        if (state == null) {
+            if (contains) {
+                ownSegment(index).remove(itemId);
+                mSize--;
+            }
+            return;
+        }
+        ownSegment(index).put(itemId, state);
+        if (!contains) {
+            mSize++;
+        }
+    }
+
+    /**
+     * Remove the states of all items whose id is not in the given sorted array.
+     */
+    void retainAll(@NonNull long[] sortedItemIds) {
+        for (int index = 0; index < SEGMENT_COUNT; index++) {
+            LongSparseArray<Parcelable> segment = mSegments[index];
+            if (segment == null) {
+                continue;
+            }
+            for (int i = segment.size() - 1; i >= 0; i--) {
+                if (Arrays.binarySearch(sortedItemIds, segment.keyAt(i)) < 0) {
+                    segment = ownSegment(index);
+                    segment.removeAt(i);
+                    mSize--;
+                }
+            }
+        }
+    }
+
+    void writeToParcel(@NonNull Parcel out, int flags) {
+        out.writeInt(mSize);
+        for (LongSparseArray<Parcelable> segment : mSegments) {
+            if (segment == null) {
+                continue;
+            }
+            for (int i = 0, size = segment.size(); i < size; i++) {
+                out.writeLong(segment.keyAt(i));
+                out.writeParcelable(segment.valueAt(i), flags);
+            }
+        }
+    }
+
+    @NonNull
+    static PageStateStore readFromParcel(@NonNull Parcel in, int count,
+                                         @Nullable ClassLoader loader) {
+        final PageStateStore store = new PageStateStore();
+        for (int i = 0; i < count; i++) {
+            final long itemId = in.readLong();
+            store.put(itemId, in.<Parcelable>readParcelable(loader));
+        }
+        return store;
+    }
+
+    private LongSparseArray<Parcelable> ownSegment(int index) {
+        LongSparseArray<Parcelable> segment = mSegments[index];
+        if (!mOwned[index]) {
+            segment = segment != null ? segment.clone() : new LongSparseArray<Parcelable>();
+            mSegments[index] = segment;
+            mOwned[index] = true;
+        }
+        return segment;
+    }
+
+    private static int segmentOf(long itemId) {
+        // Item ids are often hash codes or small positions, spread them over the segments.
+        final int hash = (int) (itemId ^ (itemId >>> 32)) * 0x9E3779B9;
+        return hash >>> (Integer.SIZE - SEGMENT_SHIFT);
+    }
+}
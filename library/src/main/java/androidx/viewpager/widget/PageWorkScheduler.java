@@ -0,0 +1,404 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * Runs background work for the pages of one or more {@link ViewSwitcher}s, such as data
+ * preloads, on a bounded number of threads. Queued work is run in order of priority, so work
+ * for the page being shown is never stuck behind speculative work for pages that may never be.
+ *
+ * <p>Work is tagged with an owner and a position so that it can be cancelled or promoted in bulk,
+ * for example when the user presses the tab of a page whose data was being prefetched. Use
+ * {@link #getDefault()} to share one scheduler, and so one set of threads, across the app.</p>
+ */
+public final class PageWorkScheduler {
+    /**
+     * Work the current page is waiting for.
+     */
+    public static final int PRIORITY_CURRENT = 0;
+
+    /**
+     * Work for a page that is about to be shown, because its tab is pressed or it was prewarmed.
+     */
+    public static final int PRIORITY_PRESSED = 1;
+
+    /**
+     * Work for a page that may be shown next, for example as predicted by usage history.
+     */
+    public static final int PRIORITY_SPECULATIVE = 2;
+
+    /**
+     * Work no page is waiting for, such as writing caches.
+     */
+    public static final int PRIORITY_HOUSEKEEPING = 3;
+
+    @IntDef({PRIORITY_CURRENT, PRIORITY_PRESSED, PRIORITY_SPECULATIVE, PRIORITY_HOUSEKEEPING})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+    }
+
+    private static final int PRIORITY_COUNT = 4;
+    private static final int DEFAULT_MAX_CONCURRENCY = 2;
+    private static final long KEEP_ALIVE = 10000; // ms
+
+    private static final int STATE_QUEUED = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_FINISHED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private static PageWorkScheduler sDefault;
+
+    private final int mMaxConcurrency;
+    private final Object mLock = new Object();
+    private final PriorityQueue<Task> mQueue = new PriorityQueue<>();
+    private int mThreadCount;
+    private int mIdleThreadCount;
+    private int mRunningCount;
+    private int mNextThreadId;
+    private long mNextSequence;
+    private final long[] mTotalWait = new long[PRIORITY_COUNT];
+    private final long[] mMaxWait = new long[PRIORITY_COUNT];
+    private final int[] mStartedCount = new int[PRIORITY_COUNT];
+
+    /**
+     * A unit of work submitted to a {@link PageWorkScheduler}.
+     */
+    public static final class Task implements Comparable<Task> {
+        final PageWorkScheduler mScheduler;
+        final Object mOwner;
+        final int mPosition;
+        final Runnable mWork;
+        int mPriority;
+        long mSequence;
+        long mEnqueueTime;
+        int mState = STATE_QUEUED;
+
+        Task(PageWorkScheduler scheduler, Object owner, int position, int priority,
+             Runnable work) {
+            mScheduler = scheduler;
+            mOwner = owner;
+            mPosition = position;
+            mPriority = priority;
+            mWork = work;
+        }
+
+        /**
+         * Remove the task from the queue if it has not started yet. Work that is already running
+         * is not interrupted, it should watch its own cancellation signal.
+         *
+         * @return true if the task was removed before it started
+         */
+        public boolean cancel() {
+            synchronized (mScheduler.mLock) {
+                return mScheduler.cancelLocked(this);
+            }
+        }
+
+        /**
+         * Raise the priority of the task if it has not started yet. Lowering it is not
+         * supported, a lower priority is ignored.
+         */
+        public void promote(@Priority int priority) {
+            synchronized (mScheduler.mLock) {
+                mScheduler.promoteLocked(this, priority);
+            }
+        }
+
+        @Priority
+        public int getPriority() {
+            synchronized (mScheduler.mLock) {
+                return mPriority;
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Returns the scheduler shared across the app.
+     */
+    @NonNull
+    public static synchronized PageWorkScheduler getDefault() {
+        if (sDefault == null) {
+            sDefault = new PageWorkScheduler(DEFAULT_MAX_CONCURRENCY);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param maxConcurrency The maximum number of tasks run at the same time
+     */
+    public PageWorkScheduler(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + maxConcurrency);
+        }
+        mMaxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Queue work to run on a background thread.
+     *
+     * @param owner    Identifies who the work is for, typically the ViewSwitcher
+     * @param position The position of the page the work is for
+     * @param priority The priority class of the work
+     * @param work     The work to run
+     * @return A handle to cancel or promote the work
+     */
+    @NonNull
+    public Task submit(@NonNull Object owner, int position, @Priority int priority,
+                       @NonNull Runnable work) {
+        final Task task = new Task(this, owner, position, priority, work);
+        synchronized (mLock) {
+            task.mSequence = mNextSequence++;
+            task.mEnqueueTime = SystemClock.uptimeMillis();
+            mQueue.add(task);
+            if (mIdleThreadCount > 0) {
+                mLock.notify();
+            }
+            // A notified worker is still counted as idle until it has the lock back, so it may
+            // already be spoken for by an earlier task.
+            if (mQueue.size() > mIdleThreadCount && mThreadCount < mMaxConcurrency) {
+                startWorkerLocked();
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Cancel all queued work of the given owner.
+     *
+     * @return The number of tasks removed from the queue
+     */
+    public int cancel(@NonNull Object owner) {
+        return cancel(owner, -1);
+    }
+
+    /**
+     * Cancel all queued work of the given owner for the given position.
+     *
+     * @param position The page position, or -1 for all positions
+     * @return The number of tasks removed from the queue
+     */
+    public int cancel(@NonNull Object owner, int position) {
+        synchronized (mLock) {
+            final ArrayList<Task> matching = findQueuedLocked(owner, position);
+            for (int i = 0, z = matching.size(); i < z; i++) {
+                cancelLocked(matching.get(i));
+            }
+            return matching.size();
+        }
+    }
+
+    /**
+     * Raise the priority of all queued work of the given owner for the given position, for
+     * example once the page becomes the switch target.
+     */
+    public void promote(@NonNull Object owner, int position, @Priority int priority) {
+        synchronized (mLock) {
+            final ArrayList<Task> matching = findQueuedLocked(owner, position);
+            for (int i = 0, z = matching.size(); i < z; i++) {
+                promoteLocked(matching.get(i), priority);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting to run.
+     */
+    public int getQueueDepth() {
+        synchronized (mLock) {
+            return mQueue.size();
+        }
+    }
+
+    /**
+     * Returns the number of tasks of the given priority waiting to run.
+     */
+    public int getQueueDepth(@Priority int priority) {
+        synchronized (mLock) {
+            int depth = 0;
+            for (Task task : mQueue) {
+                if (task.mPriority == priority) {
+                    depth++;
+                }
+            }
+            return depth;
+        }
+    }
+
+    /**
+     * Returns the number of tasks currently running.
+     */
+    public int getRunningCount() {
+        synchronized (mLock) {
+            return mRunningCount;
+        }
+    }
+
+    /**
+     * Returns how long tasks of the given priority waited in the queue on average before
+     * starting, since the scheduler was created or {@link #resetStats()} was called.
+     */
+    public long getAverageWaitMillis(@Priority int priority) {
+        synchronized (mLock) {
+            final int started = mStartedCount[priority];
+            return started > 0 ? mTotalWait[priority] / started : 0;
+        }
+    }
+
+    /**
+     * Returns the longest time a task of the given priority waited in the queue before starting,
+     * since the scheduler was created or {@link #resetStats()} was called.
+     */
+    public long getMaxWaitMillis(@Priority int priority) {
+        synchronized (mLock) {
+            return mMaxWait[priority];
+        }
+    }
+
+    public void resetStats() {
+        synchronized (mLock) {
+            for (int i = 0; i < PRIORITY_COUNT; i++) {
+                mTotalWait[i] = 0;
+                mMaxWait[i] = 0;
+                mStartedCount[i] = 0;
+            }
+        }
+    }
+
+    private ArrayList<Task> findQueuedLocked(Object owner, int position) {
+        final ArrayList<Task> matching = new ArrayList<>();
+        for (Task task : mQueue) {
+            if (task.mOwner == owner && (position < 0 || task.mPosition == position)) {
+                matching.add(task);
+            }
+        }
+        return matching;
+    }
+
+    boolean cancelLocked(Task task) {
+        if (task.mState != STATE_QUEUED) {
+            return false;
+        }
+        task.mState = STATE_CANCELLED;
+        mQueue.remove(task);
+        return true;
+    }
+
+    void promoteLocked(Task task, int priority) {
+        if (task.mState != STATE_QUEUED || priority >= task.mPriority) {
+            return;
+        }
+        // Re-insert to restore the queue order.
+        mQueue.remove(task);
+        task.mPriority = priority;
+        mQueue.add(task);
+    }
+
+    private void startWorkerLocked() {
+        mThreadCount++;
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runWorker();
+            }
+        }, "PageWork #" + ++mNextThreadId);
+        thread.start();
+    }
+
+    void runWorker() {
+        boolean retired = false;
+        try {
+            Task task;
+            while ((task = takeTask()) != null) {
+                try {
+                    task.mWork.run();
+                } finally {
+                    synchronized (mLock) {
+                        task.mState = STATE_FINISHED;
+                        mRunningCount--;
+                    }
+                }
+            }
+            retired = true;
+        } finally {
+            if (!retired) {
+                // The work threw, don't leave the rest of the queue without a worker.
+                synchronized (mLock) {
+                    mThreadCount--;
+                    if (mQueue.size() > mIdleThreadCount && mThreadCount < mMaxConcurrency) {
+                        startWorkerLocked();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next task, returns null once the worker has been idle for too long. The
+     * worker is no longer counted by then, in the same locked section that saw the queue empty,
+     * so that a task submitted right after starts a new worker instead of waiting for this one.
+     */
+    private Task takeTask() {
+        synchronized (mLock) {
+            long now = SystemClock.uptimeMillis();
+            final long deadline = now + KEEP_ALIVE;
+            while (mQueue.isEmpty()) {
+                if (now >= deadline) {
+                    mThreadCount--;
+                    return null;
+                }
+                mIdleThreadCount++;
+                try {
+                    mLock.wait(deadline - now);
+                } catch (InterruptedException e) {
+                    mThreadCount--;
+                    return null;
+                } finally {
+                    mIdleThreadCount--;
+                }
+                now = SystemClock.uptimeMillis();
+            }
+            final Task task = mQueue.poll();
+            task.mState = STATE_RUNNING;
+            mRunningCount++;
+            final long wait = now - task.mEnqueueTime;
+            mTotalWait[task.mPriority] += wait;
+            mMaxWait[task.mPriority] = Math.max(mMaxWait[task.mPriority], wait);
+            mStartedCount[task.mPriority]++;
+            return task;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.viewpager.widget;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps the pages of a {@link ViewSwitcher} alive across a configuration change, so that the
+ * ViewSwitcher of the recreated activity can reattach them instead of creating them again.
+ *
+ * <p>Obtain a store with {@link #get(ViewModelStoreOwner, String)} and pass it to
+ * {@link ViewSwitcher#setRetainedPageStore(RetainedPageStore)} before the ViewSwitcher is first
+ * laid out. The ViewSwitcher's adapter must implement {@link ViewSwitcher.PageRetainer}. Pages are
+ * only handed over when the activity saves its state while changing configurations; on a real
+ * finish or process death nothing is retained and the ViewSwitcher falls back to its saved state.
+ * Pages that are never reclaimed are handed back to the retainer when the store is cleared.</p>
+ */
+public class RetainedPageStore extends ViewModel {
+    private final HashMap<Long, Object> mPages = new HashMap<>();
+    private final HashMap<Long, PageScope> mScopes = new HashMap<>();
+    /**
+     * The adapter that retained the pages, only referenced while there are pages to discard.
+     */
+    @Nullable
+    private ViewSwitcher.PageRetainer mRetainer;
+
+    /**
+     * Used by {@link ViewModelProvider}, use {@link #get(ViewModelStoreOwner, String)} instead.
+     */
+    public RetainedPageStore() {
+    }
+
+    /**
+     * Returns the store for the given key, scoped to the given owner.
+     *
+     * @param owner Typically the activity or fragment hosting the ViewSwitcher
+     * @param key   Identifies the ViewSwitcher if the owner has more than one
+     */
+    @NonNull
+    public static RetainedPageStore get(@NonNull ViewModelStoreOwner owner, @NonNull String key) {
+        return new ViewModelProvider(owner, new ViewModelProvider.NewInstanceFactory())
+                .get(RetainedPageStore.class.getName() + ":" + key, RetainedPageStore.class);
+    }
+
+    void put(long itemId, @NonNull Object retained, @NonNull ViewSwitcher.PageRetainer retainer) {
+        mPages.put(itemId, retained);
+        mRetainer = retainer;
+    }
+
+    void putScope(long itemId, @Nullable PageScope scope) {
+        if (scope != null) {
+            mScopes.put(itemId, scope);
+        }
+    }
+
+    @Nullable
+    Object peek(long itemId) {
+        return mPages.get(itemId);
+    }
+
+    boolean contains(long itemId) {
+        return !mPages.isEmpty() && mPages.containsKey(itemId);
+    }
+
+    @Nullable
+    Object remove(long itemId) {
+        if (mPages.isEmpty()) {
+            return null;
+        }
+        final Object retained = mPages.remove(itemId);
+        if (mPages.isEmpty()) {
+            mRetainer = null;
+        }
+        return retained;
+    }
+
+    @Nullable
+    PageScope removeScope(long itemId) {
+        return mScopes.isEmpty() ? null : mScopes.remove(itemId);
+    }
+
+    boolean isEmpty() {
+        return mPages.isEmpty();
+    }
+
+    int size() {
+        return mPages.size();
+    }
+
+    /**
+     * Hands every page that was not reclaimed back to the retainer to be released.
+     */
+    void discardAll(@Nullable ViewSwitcher.PageRetainer retainer) {
+        final Iterator<Map.Entry<Long, Object>> it = mPages.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Long, Object> entry = it.next();
+            final Object retained = entry.getValue();
+            it.remove();
+            final PageScope scope = mScopes.remove(entry.getKey());
+            if (scope != null) {
+                scope.cancel();
+            }
+            if (retainer != null) {
+                retainer.onDiscardRetainedPage(retained);
+            }
+        }
+        mRetainer = null;
+    }
+
+    @Override
+    protected void onCleared() {
+        // The owner is finished without a ViewSwitcher reclaiming the pages.
+        discardAll(mRetainer);
+        for (PageScope scope : mScopes.values()) {
+            scope.cancel();
+        }
+        mScopes.clear();
+    }
+}
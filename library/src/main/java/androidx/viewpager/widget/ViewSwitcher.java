@@ -16,27 +16,59 @@
 
 package androidx.viewpager.widget;
 
+import android.app.Activity;
 import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.MutableContextWrapper;
 import android.content.res.Resources;
 import android.database.DataSetObserver;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.RecordingCanvas;
 import android.graphics.Rect;
+import android.graphics.RenderNode;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.view.accessibility.AccessibilityEvent;
 import android.widget.FrameLayout;
 
+import java.io.PrintWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import androidx.annotation.IntDef;
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.WorkerThread;
+import androidx.collection.LongSparseArray;
+import androidx.core.os.CancellationSignal;
+import androidx.core.view.GravityCompat;
 import androidx.core.view.ViewCompat;
+import androidx.core.view.ViewPropertyAnimatorCompat;
+import androidx.core.view.ViewPropertyAnimatorListenerAdapter;
 import androidx.customview.view.AbsSavedState;
+import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * A view switcher similar to a {@link androidx.viewpager.widget.ViewPager}
@@ -47,6 +79,96 @@ public class ViewSwitcher extends FrameLayout {
     private static final String TAG = "ViewSwitcher";
     private static final boolean DEBUG = false;
 
+    /**
+     * Pages are swapped instantly without any animation.
+     */
+    public static final int TRANSITION_NONE = 0;
+
+    /**
+     * The outgoing page fades out while the incoming page fades in.
+     */
+    public static final int TRANSITION_CROSSFADE = 1;
+
+    /**
+     * The incoming page slides in from the side of the new position while the outgoing page
+     * slides out the opposite side.
+     */
+    public static final int TRANSITION_SLIDE = 2;
+
+    /**
+     * The incoming page fades in while growing to its full size.
+     */
+    public static final int TRANSITION_SCALE = 3;
+
+    @IntDef({TRANSITION_NONE, TRANSITION_CROSSFADE, TRANSITION_SLIDE, TRANSITION_SCALE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface PageTransition {
+    }
+
+    /**
+     * The current page is kept while detached from the window, but is laid out again from scratch
+     * once reattached.
+     */
+    public static final int DETACH_POLICY_DEFAULT = 0;
+
+    /**
+     * The current page is kept while detached from the window, and reused as is once reattached
+     * if the current item did not change in the meantime. Suited to ViewSwitchers in the rows of a
+     * scrolling list, which are detached and reattached often.
+     */
+    public static final int DETACH_POLICY_KEEP_PAGE = 1;
+
+    /**
+     * The current page is destroyed if the ViewSwitcher stays detached from the window for a
+     * while, for example when its row sits in a RecyclerView's recycled view pool. The page's
+     * view hierarchy state is kept and restored into the page created once reattached.
+     */
+    public static final int DETACH_POLICY_RELEASE_PAGE = 2;
+
+    @IntDef({DETACH_POLICY_DEFAULT, DETACH_POLICY_KEEP_PAGE, DETACH_POLICY_RELEASE_PAGE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface DetachPolicy {
+    }
+
+    /**
+     * The listener is called synchronously when the current item changes.
+     */
+    public static final int DISPATCH_IMMEDIATE = 0;
+
+    /**
+     * The listener is called once the next frame has been drawn, so it does not delay the new
+     * page's first frame. Changes made before then are collapsed into one call with the latest
+     * position.
+     */
+    public static final int DISPATCH_AFTER_FRAME = 1;
+
+    /**
+     * The listener is called once the main thread is idle. Changes made before then are
+     * collapsed into one call with the latest position.
+     */
+    public static final int DISPATCH_IDLE = 2;
+
+    @IntDef({DISPATCH_IMMEDIATE, DISPATCH_AFTER_FRAME, DISPATCH_IDLE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface DispatchMode {
+    }
+
+    /**
+     * An id that never belongs to an item, see {@link StableIdProvider}.
+     */
+    public static final long NO_ID = -1;
+
+    private static final long DEFAULT_TRANSITION_DURATION = 200; // ms
+    /**
+     * How long a ViewSwitcher must stay detached before {@link #DETACH_POLICY_RELEASE_PAGE}
+     * destroys its page, so that fast scrolling back and forth does not recreate it.
+     */
+    private static final long RELEASE_PAGE_DELAY = 1000; // ms
+    private static final long DEFAULT_PAGE_BUILD_BUDGET = 8; // ms
+    private static final int DEFAULT_PREWARM_LIMIT = 1;
+    private static final float TRANSITION_SCALE_FROM = 0.92f;
+    private static final int RECENT_SWITCH_COUNT = 8;
+
     /**
      * Used to track what the expected number of items in the adapter should be.
      * If the app changes this when we don't expect it, we'll throw a big obnoxious exception.
@@ -56,6 +178,15 @@ public class ViewSwitcher extends FrameLayout {
     static class ItemInfo {
         Object object;
         int position;
+        /**
+         * Non-null while the page is still being built incrementally, {@link #object} is
+         * null until the builder completes.
+         */
+        PageBuilder builder;
+        /**
+         * True once a prewarmed page has been measured, laid out and drawn off-screen.
+         */
+        boolean warmedUp;
     }
 
     private ItemInfo mCurrItemInfo = null;
@@ -74,8 +205,196 @@ public class ViewSwitcher extends FrameLayout {
 
     private boolean mFirstLayout = true;
 
+    @PageTransition
+    private int mPageTransition = TRANSITION_NONE;
+    private long mPageTransitionDuration = DEFAULT_TRANSITION_DURATION;
+
+    /**
+     * The page being transitioned out. Its destroyItem call is deferred until the transition
+     * ends or is fast-forwarded by {@link #endPageTransition()}.
+     */
+    private ItemInfo mOutgoingItemInfo;
+    private View mOutgoingView;
+    private View mIncomingView;
+    private int mOutgoingLayerType;
+    private int mIncomingLayerType;
+
+    /**
+     * The page currently being built by a {@link PageBuilder}. The previous page stays attached
+     * and interactive until the build completes.
+     */
+    private ItemInfo mBuildingItemInfo;
+    private long mPageBuildBudgetNanos = DEFAULT_PAGE_BUILD_BUDGET * 1000000L;
+    private View mPagePlaceholder;
+    private PageSnapshotCache mPageSnapshotCache;
+    /**
+     * The persisted snapshot of the first page, shown instead of the placeholder until the page
+     * has drawn.
+     */
+    private View mSnapshotPlaceholder;
+    /**
+     * The page that replaces the snapshot once it has drawn.
+     */
+    private View mSnapshotReplacement;
+    private final Runnable mRemoveSnapshotRunnable = new Runnable() {
+        @Override
+        public void run() {
+            removeSnapshotPlaceholder();
+        }
+    };
+    private boolean mPageSnapshotChecked;
+    private final FrameCallbackCompat mPageBuildCallback = new FrameCallbackCompat() {
+        @Override
+        void doFrame(long frameTimeNanos) {
+            advancePageBuild(frameTimeNanos);
+        }
+    };
+
+    private boolean mDeferInitialPopulate;
+    /**
+     * True until the first page for the current adapter has been added.
+     */
+    private boolean mInitialPageReadyPending;
+    private OnInitialPageReadyListener mInitialPageReadyListener;
+    private boolean mDeferredPopulatePosted;
+    private final Runnable mDeferredPopulateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDeferredPopulatePosted = false;
+            populate();
+        }
+    };
+
+    private RetainedPageStore mRetainedPageStore;
+    /**
+     * The current page once it has been handed to {@link #mRetainedPageStore}, until this
+     * ViewSwitcher is detached.
+     */
+    private ItemInfo mRetainedItemInfo;
+
+    private boolean mUpdatingDataSet;
+
+    private boolean mCoalesceDataSetChanges;
+    private boolean mWarmUpPrewarmedPages;
+    private boolean mWarmUpScheduled;
+    private final MessageQueue.IdleHandler mWarmUpIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            mWarmUpScheduled = warmUpNextPrewarmedItem();
+            return mWarmUpScheduled;
+        }
+    };
+    private RecyclerView.RecycledViewPool mRecycledViewPool;
+    private boolean mInjectRecycledViewPool;
+    /**
+     * Set when the adapter notified a change that has not been processed yet, see
+     * {@link #setCoalesceDataSetChanges(boolean)}.
+     */
+    private boolean mDataSetChangePending;
+    private final FrameCallbackCompat mDataSetChangeCallback = new FrameCallbackCompat() {
+        @Override
+        void doFrame(long frameTimeNanos) {
+            processPendingDataSetChange();
+        }
+    };
+
+    /**
+     * Pages created ahead of being selected, least recently requested first. They are attached
+     * but laid out with zero size until they become the current item.
+     */
+    private final ArrayList<ItemInfo> mPrewarmedItems = new ArrayList<>();
+    private int mPrewarmLimit = DEFAULT_PREWARM_LIMIT;
+
+    private final PageDataPreloadCache mPreloadCache = new PageDataPreloadCache(this);
+
+    private PageLeakTracker mPageLeakTracker;
+
+    /**
+     * The view last focused in each page, keyed by stable id.
+     */
+    private final LongSparseArray<PageFocus> mPageFocus = new LongSparseArray<>();
+    /**
+     * The states captured from pages of a {@link PageStateSaver} adapter, keyed by item id.
+     */
+    private PageStateStore mPageStates = new PageStateStore();
+    private PageStateStore mRestoredPageStates;
+    /**
+     * Set when the outgoing page had focus, which then moves into the incoming page.
+     */
+    private boolean mPageFocusPending;
+
+    @DetachPolicy
+    private int mDetachPolicy = DETACH_POLICY_DEFAULT;
+    /**
+     * The view hierarchy state of the page released by {@link #DETACH_POLICY_RELEASE_PAGE},
+     * restored into the next page created for the same item.
+     */
+    private SparseArray<Parcelable> mReleasedPageState;
+    private long mReleasedPageId = NO_ID;
+    private Handler mReleasePageHandler;
+    private final Runnable mReleasePageRunnable = new Runnable() {
+        @Override
+        public void run() {
+            releaseDetachedPage();
+        }
+    };
+
+    // Diagnostics reported by dump().
+    private int mInstantiateCount;
+    private int mDestroyCount;
+    private int mSwitchCount;
+    private long mSwitchStartNanos = -1;
+    private final long[] mRecentSwitchNanos = new long[RECENT_SWITCH_COUNT];
+    private final int[] mRecentSwitchPositions = new int[RECENT_SWITCH_COUNT];
+
+    private final Rect mPagePadding = new Rect();
+    private final Rect mTempContainerRect = new Rect();
+    private final Rect mTempChildRect = new Rect();
+
+    // Scopes of the live pages, created on demand.
+    private final IdentityHashMap<Object, PageScope> mPageScopes = new IdentityHashMap<>();
+    private int mInstantiatingPosition = -1;
+    private PageScope mInstantiatingScope;
+
     private List<OnPageChangeListener> mOnPageChangeListeners;
+    private List<OnPageChangeListener> mAfterFramePageChangeListeners;
+    private List<OnPageChangeListener> mIdlePageChangeListeners;
+    // The latest position not yet dispatched to the deferred listeners, or -1.
+    private int mAfterFramePageSelected = -1;
+    private int mIdlePageSelected = -1;
+    private boolean mIdlePageSelectedScheduled;
+    private final FrameCallbackCompat mAfterFramePageSelectedCallback = new FrameCallbackCompat() {
+        @Override
+        void doFrame(long frameTimeNanos) {
+            // Frame callbacks run before the frame is drawn, anything posted now runs after.
+            ViewSwitcher.this.post(mAfterFramePageSelectedRunnable);
+        }
+    };
+    private final Runnable mAfterFramePageSelectedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final int position = mAfterFramePageSelected;
+            mAfterFramePageSelected = -1;
+            if (position >= 0) {
+                dispatchOnPageSelected(mAfterFramePageChangeListeners, position);
+            }
+        }
+    };
+    private final MessageQueue.IdleHandler mIdlePageSelectedHandler =
+            new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                    mIdlePageSelectedScheduled = false;
+                    final int position = mIdlePageSelected;
+                    mIdlePageSelected = -1;
+                    if (position >= 0) {
+                        dispatchOnPageSelected(mIdlePageChangeListeners, position);
+                    }
+                    return false;
+                }
+            };
     private List<OnAdapterChangeListener> mAdapterChangeListeners;
+    private List<OnDataSetChangeListener> mDataSetChangeListeners;
 
     /**
      * Callback interface for responding to changing state of the selected page.
@@ -90,6 +409,213 @@ public class ViewSwitcher extends FrameLayout {
         void onPageSelected(int position);
     }
 
+    /**
+     * Builds a page incrementally across several frames. ViewSwitcher calls {@link #buildStep()}
+     * repeatedly within a per-frame time budget, so each step should only do a small slice of
+     * work such as inflating or binding one section of the page.
+     */
+    public interface PageBuilder {
+        /**
+         * Perform the next slice of work.
+         *
+         * @return true once the page is complete and {@link #finishBuild(ViewGroup)} may be called.
+         */
+        boolean buildStep();
+
+        /**
+         * Add the completed page to the container and return the object representing it, with the
+         * same contract as {@link PagerAdapter#instantiateItem(ViewGroup, int)}. The returned
+         * object is later passed to the adapter's destroyItem.
+         *
+         * @param container The containing View in which the page will be shown.
+         * @return An Object representing the new page.
+         */
+        @NonNull
+        Object finishBuild(@NonNull ViewGroup container);
+
+        /**
+         * Called instead of {@link #finishBuild(ViewGroup)} when the page is no longer needed,
+         * for example because another page was selected before the build completed.
+         */
+        void cancel();
+    }
+
+    /**
+     * Implemented by a {@link PagerAdapter} that can build some of its pages incrementally.
+     */
+    public interface PageBuilderProvider {
+        /**
+         * Return a builder for the page at the given position, or null to have the page created
+         * synchronously by {@link PagerAdapter#instantiateItem(ViewGroup, int)}.
+         *
+         * @param container The containing View in which the page will be shown.
+         * @param position  The page position to be built.
+         */
+        @Nullable
+        PageBuilder createPageBuilder(@NonNull ViewGroup container, int position);
+    }
+
+    /**
+     * Implemented by a {@link PagerAdapter} whose items have ids that stay the same when items
+     * move, so that state remembered for a page can follow it. Adapters that do not implement
+     * this use the item position as its id. {@link #NO_ID} must not be used as an item id.
+     */
+    public interface StableIdProvider {
+        /**
+         * Return a unique identifier for the item at the given position.
+         *
+         * @param position Position within this adapter
+         * @return Unique identifier for the item at position
+         */
+        long getItemId(int position);
+    }
+
+    /**
+     * Implemented by a {@link PagerAdapter} whose pages can outlive a configuration change, see
+     * {@link RetainedPageStore}. Retained objects are keyed by the item's stable id, see
+     * {@link StableIdProvider}.
+     */
+    public interface PageRetainer {
+        /**
+         * Called while the activity's state is saved ahead of being recreated for a configuration
+         * change. Return the page itself or any data holder from which the page can be recreated
+         * cheaply. The page is still attached: leave it in the container and start no
+         * transaction, the ViewSwitcher removes a retained page view from the container itself
+         * once it is detached, and never calls destroyItem for the page.
+         *
+         * <p>The returned object must not reference the old activity. A page view can only be
+         * retained if it was created with a {@link MutableContextWrapper}, whose base context
+         * the ViewSwitcher moves to the application while the page is parked and to the new
+         * activity when it is reattached. Views created with the activity itself are not
+         * retained; the page is destroyed with the activity and created again instead.</p>
+         *
+         * @param container The containing View the page is being removed from.
+         * @param position  The page position.
+         * @param object    The same object that was returned by instantiateItem.
+         * @return The object to retain, or null to have the page destroyed instead.
+         */
+        @Nullable
+        Object onRetainPage(@NonNull ViewGroup container, int position, @NonNull Object object);
+
+        /**
+         * Create the page for the given position from an object returned by
+         * {@link #onRetainPage(ViewGroup, int, Object)}, with the same contract as
+         * {@link PagerAdapter#instantiateItem(ViewGroup, int)}.
+         *
+         * @param container The containing View in which the page will be shown.
+         * @param position  The page position to be instantiated.
+         * @param retained  The retained object.
+         * @return An Object representing the new page.
+         */
+        @NonNull
+        Object instantiateRetainedItem(@NonNull ViewGroup container, int position,
+                                       @NonNull Object retained);
+
+        /**
+         * Called for retained objects that were not reclaimed by the recreated ViewSwitcher's
+         * first page, for example because a different page is shown now.
+         *
+         * @param retained The retained object.
+         */
+        void onDiscardRetainedPage(@NonNull Object retained);
+    }
+
+    /**
+     * Implemented by a {@link PagerAdapter} whose page states are saved by the ViewSwitcher
+     * instead of by {@link PagerAdapter#saveState()}. A page's state is captured once, when the
+     * page is hidden, and kept ready to be parcelled, so that saving the instance state only
+     * captures the current page no matter how many pages were visited. The adapter's own
+     * saveState should then leave the page states out. States are keyed by the item's stable id,
+     * see {@link StableIdProvider}.
+     */
+    public interface PageStateSaver {
+        /**
+         * Capture the state of a page, typically its view hierarchy state.
+         *
+         * @param position The page position.
+         * @param object   The same object that was returned by instantiateItem.
+         * @return The page's state, or null if it has none.
+         */
+        @Nullable
+        Parcelable savePageState(int position, @NonNull Object object);
+
+        /**
+         * Restore a state captured by {@link #savePageState(int, Object)} into a new page for
+         * the same item. Called right after the page is instantiated.
+         *
+         * @param position The page position.
+         * @param object   The same object that was returned by instantiateItem.
+         * @param state    The captured state.
+         */
+        void restorePageState(int position, @NonNull Object object, @NonNull Parcelable state);
+    }
+
+    /**
+     * Implemented by a {@link PagerAdapter} that can load the data of a page ahead of the page
+     * being created, for example while its tab is pressed. See {@link #preloadData(int)}.
+     */
+    public interface PageDataPreloader {
+        /**
+         * Load the data of the page at the given position. Called on a background thread; the
+         * load should check the signal regularly and stop once it is cancelled, which happens
+         * when the data is no longer expected to be needed.
+         *
+         * @param position The page position.
+         * @param signal   Cancelled when the result is no longer wanted.
+         * @return The loaded data, handed to
+         * {@link #onBindPreloadedData(ViewGroup, int, Object, Object)}.
+         * @throws androidx.core.os.OperationCanceledException If the load was cancelled.
+         */
+        @WorkerThread
+        @Nullable
+        Object onPreloadData(int position, @NonNull CancellationSignal signal);
+
+        /**
+         * Hand preloaded data to a page. Called right after the page is instantiated if its data
+         * was loaded by then, or as soon as the data is loaded if the page is still alive. Pages
+         * for which no preload was requested are never bound and load their data as usual.
+         *
+         * @param container The containing View of the page.
+         * @param position  The page position.
+         * @param object    The same object that was returned by instantiateItem.
+         * @param data      The result of {@link #onPreloadData(int, CancellationSignal)}.
+         */
+        @MainThread
+        void onBindPreloadedData(@NonNull ViewGroup container, int position,
+                                 @NonNull Object object, @Nullable Object data);
+    }
+
+    /**
+     * Callback interface for responding to the adapter's data set changing, after ViewSwitcher
+     * has processed the change.
+     */
+    public interface OnDataSetChangeListener {
+        /**
+         * Called after ViewSwitcher has handled a {@link PagerAdapter#notifyDataSetChanged()},
+         * once the current item reflects the new data set. Components that mirror the adapter,
+         * such as tab mediators, should update from here rather than observing the adapter
+         * themselves, so that one change results in a single pass that agrees with
+         * {@link #getCurrentItem()}.
+         *
+         * @param viewSwitcher ViewSwitcher whose adapter changed
+         */
+        void onDataSetChanged(@NonNull ViewSwitcher viewSwitcher);
+    }
+
+    /**
+     * Callback interface for responding to the first page of an adapter being ready.
+     */
+    public interface OnInitialPageReadyListener {
+        /**
+         * Called once per adapter, when the first page has been added to the ViewSwitcher. May be
+         * called during layout.
+         *
+         * @param viewSwitcher ViewSwitcher whose first page is ready
+         * @param position     Position index of the page
+         */
+        void onInitialPageReady(@NonNull ViewSwitcher viewSwitcher, int position);
+    }
+
     /**
      * Callback interface for responding to adapter changes.
      */
@@ -132,25 +658,50 @@ public class ViewSwitcher extends FrameLayout {
      * @param adapter Adapter to use
      */
     public void setAdapter(@Nullable PagerAdapter adapter) {
+        cancelPageBuild();
+        clearPrewarmedItems();
+        endPageTransition();
+        cancelDeferredPopulate();
         if (mAdapter != null) {
             if (mObserver != null) {
-                mAdapter.setViewPagerObserver(mObserver);
+                // Stop observing the old adapter, which would otherwise keep us alive and keep
+                // notifying us about a data set we no longer show.
+                mAdapter.setViewPagerObserver(null);
             }
             mAdapter.startUpdate(this);
             ItemInfo itemInfo = mCurrItemInfo;
             if (itemInfo != null) {
-                mAdapter.destroyItem(this, mCurItem, itemInfo.object);
+                destroyItemObject(mCurItem, itemInfo.object);
             }
             mAdapter.finishUpdate(this);
             mCurrItemInfo = null;
             removeAllViews();
+            // Nothing of the old adapter's pages should outlive it.
+            cancelPageScopes();
             mCurItem = 0;
             scrollTo(0, 0);
         }
 
+        if (mReleasePageHandler != null) {
+            mReleasePageHandler.removeCallbacks(mReleasePageRunnable);
+        }
+        mReleasedPageState = null;
+        mPreloadCache.cancelAll();
+        mPageFocus.clear();
+        mPageFocusPending = false;
+        mPageStates = new PageStateStore();
+        // The new adapter is populated from scratch.
+        mDataSetChangePending = false;
+        mDataSetChangeCallback.cancel();
+
         final PagerAdapter oldAdapter = mAdapter;
         mAdapter = adapter;
         mExpectedAdapterCount = 0;
+        mInitialPageReadyPending = adapter != null;
+        mPageSnapshotChecked = false;
+        removeCallbacks(mRemoveSnapshotRunnable);
+        mSnapshotPlaceholder = null;
+        mSnapshotReplacement = null;
 
         if (mAdapter != null) {
             if (mObserver == null) {
@@ -162,6 +713,10 @@ public class ViewSwitcher extends FrameLayout {
             mFirstLayout = true;
             mExpectedAdapterCount = mAdapter.getCount();
             if (mRestoredCurItem >= 0) {
+                if (mRestoredPageStates != null) {
+                    mPageStates = mRestoredPageStates;
+                    mRestoredPageStates = null;
+                }
                 mAdapter.restoreState(mRestoredAdapterState, mRestoredClassLoader);
                 setCurrentItemInternal(mRestoredCurItem, true);
                 mRestoredCurItem = -1;
@@ -216,8 +771,62 @@ public class ViewSwitcher extends FrameLayout {
         }
     }
 
+    /**
+     * Add a listener that will be invoked after this ViewSwitcher has processed a change of its
+     * adapter's data set. See {@link OnDataSetChangeListener}.
+     *
+     * @param listener listener to add
+     */
+    public void addOnDataSetChangeListener(@NonNull OnDataSetChangeListener listener) {
+        if (mDataSetChangeListeners == null) {
+            mDataSetChangeListeners = new ArrayList<>();
+        }
+        mDataSetChangeListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener that was previously added via
+     * {@link #addOnDataSetChangeListener(OnDataSetChangeListener)}.
+     *
+     * @param listener listener to remove
+     */
+    public void removeOnDataSetChangeListener(@NonNull OnDataSetChangeListener listener) {
+        if (mDataSetChangeListeners != null) {
+            mDataSetChangeListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Returns true while this ViewSwitcher is processing a change of its adapter's data set.
+     * {@link OnPageChangeListener}s invoked during that time may see components that mirror the
+     * adapter in their old state, they are brought up to date by an
+     * {@link OnDataSetChangeListener} afterwards.
+     */
+    public boolean isUpdatingDataSet() {
+        return mUpdatingDataSet;
+    }
+
     private int getClientWidth() {
-        return getMeasuredWidth() - getPaddingLeft() - getPaddingRight();
+        final Rect padding = getPagePadding();
+        return getMeasuredWidth() - padding.left - padding.right;
+    }
+
+    /**
+     * Returns the padding pages are laid out in: ours, widened to the foreground's own padding
+     * the way FrameLayout does by default, so that a framing foreground does not cover them.
+     * The returned Rect is reused.
+     */
+    private Rect getPagePadding() {
+        final Rect padding = mPagePadding;
+        final Drawable foreground = getForeground();
+        if (foreground == null || !foreground.getPadding(padding)) {
+            padding.set(0, 0, 0, 0);
+        }
+        padding.set(Math.max(getPaddingLeft(), padding.left),
+                Math.max(getPaddingTop(), padding.top),
+                Math.max(getPaddingRight(), padding.right),
+                Math.max(getPaddingBottom(), padding.bottom));
+        return padding;
     }
 
     /**
@@ -237,6 +846,7 @@ public class ViewSwitcher extends FrameLayout {
     }
 
     void setCurrentItemInternal(int item, boolean always) {
+        processPendingDataSetChange();
         if (mAdapter == null || mAdapter.getCount() <= 0) {
             return;
         }
@@ -279,10 +889,41 @@ public class ViewSwitcher extends FrameLayout {
      * @param listener listener to add
      */
     public void addOnPageChangeListener(@NonNull OnPageChangeListener listener) {
-        if (mOnPageChangeListeners == null) {
-            mOnPageChangeListeners = new ArrayList<>();
+        addOnPageChangeListener(listener, DISPATCH_IMMEDIATE);
+    }
+
+    /**
+     * Add a listener that will be invoked whenever the page changes, at a time depending on
+     * the dispatch mode. Listeners that don't need to run before the new page is shown, such as
+     * analytics or logging, should be deferred so they don't delay its first frame.
+     *
+     * @param listener listener to add
+     * @param mode     One of {@link #DISPATCH_IMMEDIATE}, {@link #DISPATCH_AFTER_FRAME} or
+     *                 {@link #DISPATCH_IDLE}
+     */
+    public void addOnPageChangeListener(@NonNull OnPageChangeListener listener,
+                                        @DispatchMode int mode) {
+        switch (mode) {
+            case DISPATCH_AFTER_FRAME:
+                if (mAfterFramePageChangeListeners == null) {
+                    mAfterFramePageChangeListeners = new ArrayList<>();
+                }
+                mAfterFramePageChangeListeners.add(listener);
+                break;
+            case DISPATCH_IDLE:
+                if (mIdlePageChangeListeners == null) {
+                    mIdlePageChangeListeners = new ArrayList<>();
+                }
+                mIdlePageChangeListeners.add(listener);
+                break;
+            case DISPATCH_IMMEDIATE:
+            default:
+                if (mOnPageChangeListeners == null) {
+                    mOnPageChangeListeners = new ArrayList<>();
+                }
+                mOnPageChangeListeners.add(listener);
+                break;
         }
-        mOnPageChangeListeners.add(listener);
     }
 
     /**
@@ -295,6 +936,12 @@ public class ViewSwitcher extends FrameLayout {
         if (mOnPageChangeListeners != null) {
             mOnPageChangeListeners.remove(listener);
         }
+        if (mAfterFramePageChangeListeners != null) {
+            mAfterFramePageChangeListeners.remove(listener);
+        }
+        if (mIdlePageChangeListeners != null) {
+            mIdlePageChangeListeners.remove(listener);
+        }
     }
 
     /**
@@ -304,136 +951,1595 @@ public class ViewSwitcher extends FrameLayout {
         if (mOnPageChangeListeners != null) {
             mOnPageChangeListeners.clear();
         }
+        if (mAfterFramePageChangeListeners != null) {
+            mAfterFramePageChangeListeners.clear();
+        }
+        if (mIdlePageChangeListeners != null) {
+            mIdlePageChangeListeners.clear();
+        }
     }
 
-    ItemInfo addNewItem(int position) {
-        ItemInfo ii = new ItemInfo();
-        ii.position = position;
-        ii.object = mAdapter.instantiateItem(this, position);
-        mCurrItemInfo = ii;
-        return ii;
+    /**
+     * Set the transition used when switching from one page to another. The outgoing and incoming
+     * pages are promoted to hardware layers for the duration of the transition and the outgoing
+     * page is only destroyed once the transition has ended.
+     *
+     * @param transition One of {@link #TRANSITION_NONE}, {@link #TRANSITION_CROSSFADE},
+     *                   {@link #TRANSITION_SLIDE} or {@link #TRANSITION_SCALE}
+     */
+    public void setPageTransition(@PageTransition int transition) {
+        if (mPageTransition != transition) {
+            endPageTransition();
+            mPageTransition = transition;
+        }
     }
 
-    void dataSetChanged() {
-        // This method only gets called if our observer is attached, so mAdapter is non-null.
+    @PageTransition
+    public int getPageTransition() {
+        return mPageTransition;
+    }
 
-        final int adapterCount = mAdapter.getCount();
-        mExpectedAdapterCount = adapterCount;
-        boolean needPopulate = mCurrItemInfo == null;
-        int newCurrItem = mCurItem;
+    /**
+     * Set the duration of page transitions.
+     *
+     * @param durationMillis Duration in milliseconds
+     */
+    public void setPageTransitionDuration(long durationMillis) {
+        if (durationMillis < 0) {
+            throw new IllegalArgumentException("Duration must be non-negative: " + durationMillis);
+        }
+        mPageTransitionDuration = durationMillis;
+    }
 
-        boolean isUpdating = false;
-        ItemInfo ii = mCurrItemInfo;
-        if (ii != null) {
-            final int newPos = mAdapter.getItemPosition(ii.object);
+    public long getPageTransitionDuration() {
+        return mPageTransitionDuration;
+    }
 
-            if (newPos == PagerAdapter.POSITION_NONE) {
-                mCurrItemInfo = null;
+    /**
+     * Set the time ViewSwitcher may spend per frame advancing a {@link PageBuilder}.
+     *
+     * @param budgetMillis Budget in milliseconds, measured from the start of the frame
+     */
+    public void setPageBuildFrameBudget(long budgetMillis) {
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("Budget must be positive: " + budgetMillis);
+        }
+        mPageBuildBudgetNanos = budgetMillis * 1000000L;
+    }
+
+    public long getPageBuildFrameBudget() {
+        return mPageBuildBudgetNanos / 1000000L;
+    }
+
+    /**
+     * Set a view to show while a page is being built by a {@link PageBuilder} and there is no
+     * previous page to keep showing in the meantime.
+     *
+     * @param placeholder Placeholder view, or null for none
+     */
+    public void setPagePlaceholder(@Nullable View placeholder) {
+        final boolean shown = mPagePlaceholder != null && mPagePlaceholder.getParent() == this;
+        if (shown) {
+            removeView(mPagePlaceholder);
+        }
+        mPagePlaceholder = placeholder;
+        if (shown && placeholder != null) {
+            addView(placeholder);
+        }
+    }
+
+    @Nullable
+    public View getPagePlaceholder() {
+        return mPagePlaceholder;
+    }
+
+    /**
+     * Set a cache persisting a snapshot of the current page across launches. When the first page
+     * of the adapter is {@link #setDeferInitialPopulate(boolean) deferred} or built by a
+     * {@link PageBuilder}, its snapshot is shown in place of the
+     * {@link #setPagePlaceholder(View) placeholder} until the page has drawn. The adapter must
+     * implement {@link StableIdProvider}, snapshots are keyed by item id.
+     *
+     * @param cache The snapshot cache, or null for none
+     */
+    public void setPageSnapshotCache(@Nullable PageSnapshotCache cache) {
+        mPageSnapshotCache = cache;
+    }
+
+    @Nullable
+    public PageSnapshotCache getPageSnapshotCache() {
+        return mPageSnapshotCache;
+    }
+
+    /**
+     * Loads the snapshot of the first page, once per adapter, if it is going to be waited for.
+     */
+    private void loadPageSnapshot(int widthMeasureSpec, int heightMeasureSpec) {
+        if (mPageSnapshotCache == null || mPageSnapshotChecked || !mInitialPageReadyPending
+                || mCurrItemInfo != null || mBuildingItemInfo != null
+                || !(mAdapter instanceof StableIdProvider)
+                || !(mDeferInitialPopulate || mAdapter instanceof PageBuilderProvider)
+                || mCurItem >= mAdapter.getCount()
+                || MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY
+                || MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.EXACTLY) {
+            return;
+        }
+        mPageSnapshotChecked = true;
+        final Rect padding = getPagePadding();
+        final int width = MeasureSpec.getSize(widthMeasureSpec) - padding.left - padding.right;
+        final int height = MeasureSpec.getSize(heightMeasureSpec) - padding.top - padding.bottom;
+        final Bitmap snapshot = mPageSnapshotCache.load(getItemId(mCurItem), width, height,
+                getResources().getConfiguration());
+        if (snapshot != null) {
+            mSnapshotPlaceholder = new PageSnapshotCache.SnapshotView(getContext(), snapshot);
+        }
+    }
+
+    /**
+     * Saves the current page to the snapshot cache, as the window is hidden. This draws the page
+     * in software, at a reduced size, see {@link PageSnapshotCache}.
+     */
+    private void savePageSnapshot() {
+        if (mPageSnapshotCache == null || mCurrItemInfo == null || mBuildingItemInfo != null
+                || !(mAdapter instanceof StableIdProvider)) {
+            return;
+        }
+        final View page = viewForObject(mCurrItemInfo.object);
+        if (page != null && page.getWidth() > 0 && page.getHeight() > 0) {
+            mPageSnapshotCache.save(getItemId(mCurrItemInfo.position), page,
+                    getResources().getConfiguration());
+        }
+    }
+
+    /**
+     * Returns the view to show while the first page is not there yet, the persisted snapshot if
+     * there is one.
+     */
+    @Nullable
+    private View getShownPlaceholder() {
+        return mSnapshotPlaceholder != null ? mSnapshotPlaceholder : mPagePlaceholder;
+    }
+
+    /**
+     * Returns true while the current item is still being built by a {@link PageBuilder}.
+     */
+    public boolean isBuildingPage() {
+        return mBuildingItemInfo != null;
+    }
+
+    /**
+     * Start creating the page at the given position ahead of it being selected, for example when
+     * the user presses the tab that selects it. If the adapter supplies a {@link PageBuilder} for
+     * the position the page is built across the following frames, otherwise it is instantiated
+     * right away. The page is kept hidden until it becomes the current item, or destroyed when
+     * more than {@link #getPrewarmLimit()} pages are waiting or the data set changes.
+     *
+     * @param position Position of the page to create
+     */
+    public void prewarmItem(int position) {
+        if (mAdapter == null || mPrewarmLimit == 0 || getWindowToken() == null
+                || position < 0 || position >= mExpectedAdapterCount
+                || mAdapter.getCount() != mExpectedAdapterCount
+                || (mCurrItemInfo != null && mCurrItemInfo.position == position)
+                || (mBuildingItemInfo != null && mBuildingItemInfo.position == position)) {
+            return;
+        }
+        ItemInfo ii = takePrewarmedItem(position);
+        if (ii == null) {
+            preloadData(position);
+            while (mPrewarmedItems.size() >= mPrewarmLimit) {
+                destroyPrewarmedItem(mPrewarmedItems.get(0));
+            }
+            ii = new ItemInfo();
+            ii.position = position;
+            ii.builder = hasRetainedPage(position) ? null : createPageBuilder(position);
+            if (ii.builder != null) {
+                mPageBuildCallback.post(this);
+            } else {
+                mAdapter.startUpdate(this);
+                ii.object = instantiateItemObject(position);
+                mAdapter.finishUpdate(this);
+            }
+        }
+        // Most recently requested last.
+        mPrewarmedItems.add(ii);
+        scheduleWarmUp();
+    }
+
+    /**
+     * Set the maximum number of pages that can be waiting after {@link #prewarmItem(int)}. Once
+     * exceeded, the least recently requested page is destroyed.
+     *
+     * @param limit Maximum number of prewarmed pages, 0 to disable prewarming
+     */
+    public void setPrewarmLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must be non-negative: " + limit);
+        }
+        mPrewarmLimit = limit;
+        while (mPrewarmedItems.size() > limit) {
+            destroyPrewarmedItem(mPrewarmedItems.get(0));
+        }
+    }
+
+    public int getPrewarmLimit() {
+        return mPrewarmLimit;
+    }
+
+    /**
+     * Set whether prewarmed pages are measured, laid out and drawn once in idle time, at the
+     * current size of this ViewSwitcher. Their text layouts, image loads and display lists are
+     * then ready before they are shown, making their first frame on screen close to a steady
+     * one. Warmed up pages stay laid out just outside our bounds and are never drawn until
+     * shown. Display lists are recorded from API 29, and software drawing is used before API
+     * 26; in between only measure and layout run, since hardware bitmaps cannot be drawn in
+     * software. Disabled by default.
+     *
+     * @param warmUp true to warm up prewarmed pages in idle time
+     * @see #prewarmItem(int)
+     */
+    public void setWarmUpPrewarmedPages(boolean warmUp) {
+        mWarmUpPrewarmedPages = warmUp;
+        if (warmUp) {
+            scheduleWarmUp();
+        } else {
+            cancelWarmUp();
+        }
+    }
+
+    public boolean getWarmUpPrewarmedPages() {
+        return mWarmUpPrewarmedPages;
+    }
+
+    private void scheduleWarmUp() {
+        if (mWarmUpPrewarmedPages && !mWarmUpScheduled && getWindowToken() != null
+                && nextPrewarmedItemToWarmUp() != null) {
+            mWarmUpScheduled = true;
+            Looper.myQueue().addIdleHandler(mWarmUpIdleHandler);
+        }
+    }
+
+    private void cancelWarmUp() {
+        if (mWarmUpScheduled) {
+            mWarmUpScheduled = false;
+            Looper.myQueue().removeIdleHandler(mWarmUpIdleHandler);
+        }
+    }
+
+    @Nullable
+    private ItemInfo nextPrewarmedItemToWarmUp() {
+        // Most recently requested first, it is the most likely to be selected next.
+        for (int i = mPrewarmedItems.size() - 1; i >= 0; i--) {
+            final ItemInfo ii = mPrewarmedItems.get(i);
+            if (ii.builder == null && !ii.warmedUp) {
+                return ii;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Warms up one prewarmed page per idle callback, so that input is never delayed by more
+     * than one page's worth of work.
+     */
+    boolean warmUpNextPrewarmedItem() {
+        final ItemInfo ii = nextPrewarmedItemToWarmUp();
+        if (ii == null || mAdapter == null) {
+            return false;
+        }
+        ii.warmedUp = true;
+        final View page = viewForObject(ii.object);
+        final int width = getWidth();
+        final int height = getHeight();
+        if (page != null && page.getVisibility() != GONE && width > 0 && height > 0) {
+            injectRecycledViewPool(ii);
+            measurePage(page);
+            layoutPage(page, width, height, true);
+            warmUpDisplayList(page);
+        }
+        return nextPrewarmedItemToWarmUp() != null;
+    }
+
+    private static void warmUpDisplayList(@NonNull View page) {
+        if (Build.VERSION.SDK_INT >= 29) {
+            Api29Impl.warmUpDisplayList(page);
+        } else if (Build.VERSION.SDK_INT < 26) {
+            final Picture picture = new Picture();
+            page.draw(picture.beginRecording(page.getWidth(), page.getHeight()));
+            picture.endRecording();
+        }
+    }
+
+    /**
+     * Returns true if the child is a warmed up prewarmed page, which is kept measured and laid
+     * out beside us.
+     */
+    private boolean isWarmChild(View child) {
+        for (int i = 0, z = mPrewarmedItems.size(); i < z; i++) {
+            final ItemInfo ii = mPrewarmedItems.get(i);
+            if (ii.warmedUp && ii.object != null && mAdapter.isViewFromObject(child, ii.object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start loading the data of the page at the given position on a background thread, if the
+     * adapter implements {@link PageDataPreloader}. The data is handed to the page when it is
+     * created. Called by {@link #prewarmItem(int)}, apps can also call it for pages they expect
+     * to be shown soon. Only the {@link #getPreloadCacheSize()} most recently requested pages
+     * are kept, older preloads are cancelled.
+     *
+     * <p>The load runs with {@link PageWorkScheduler#PRIORITY_PRESSED}, use
+     * {@link #preloadData(int, int)} for speculative loads.</p>
+     *
+     * @param position Position of the page to load the data of
+     */
+    public void preloadData(int position) {
+        preloadData(position, PageWorkScheduler.PRIORITY_PRESSED);
+    }
+
+    /**
+     * Like {@link #preloadData(int)}, with the priority the load is scheduled with. The load is
+     * promoted to {@link PageWorkScheduler#PRIORITY_CURRENT} if the page becomes the current
+     * item before the load started.
+     *
+     * @param position Position of the page to load the data of
+     * @param priority Priority of the load within the {@link #getPageWorkScheduler() scheduler}
+     */
+    public void preloadData(int position, @PageWorkScheduler.Priority int priority) {
+        if (!(mAdapter instanceof PageDataPreloader) || position < 0
+                || position >= mExpectedAdapterCount
+                || (mCurrItemInfo != null && mCurrItemInfo.position == position)) {
+            return;
+        }
+        mPreloadCache.preload((PageDataPreloader) mAdapter, position, getItemId(position),
+                priority);
+    }
+
+    /**
+     * Set the number of pages whose preloaded data is kept, see {@link #preloadData(int)}.
+     *
+     * @param size Maximum number of entries, 0 to disable preloading
+     */
+    public void setPreloadCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must be non-negative: " + size);
+        }
+        mPreloadCache.setMaxSize(size);
+    }
+
+    public int getPreloadCacheSize() {
+        return mPreloadCache.getMaxSize();
+    }
+
+    /**
+     * Set the scheduler that background work for this ViewSwitcher's pages, such as
+     * {@link PageDataPreloader#onPreloadData(int, CancellationSignal)}, runs on. Defaults to
+     * {@link PageWorkScheduler#getDefault()}.
+     */
+    public void setPageWorkScheduler(@NonNull PageWorkScheduler scheduler) {
+        mPreloadCache.setScheduler(scheduler);
+    }
+
+    @NonNull
+    public PageWorkScheduler getPageWorkScheduler() {
+        return mPreloadCache.getScheduler();
+    }
+
+    /**
+     * Cancel all pending preloads and drop the data already preloaded.
+     */
+    public void cancelPreloads() {
+        mPreloadCache.cancelAll();
+    }
+
+    /**
+     * Destroy all pages created by {@link #prewarmItem(int)} that have not been selected.
+     */
+    public void clearPrewarmedItems() {
+        for (int i = mPrewarmedItems.size() - 1; i >= 0; i--) {
+            destroyPrewarmedItem(mPrewarmedItems.get(i));
+        }
+    }
+
+    /**
+     * Defer creating the first page of an adapter until after the frame in which the ViewSwitcher
+     * is first laid out, so that the page's instantiation does not delay that frame. The
+     * {@link #setPagePlaceholder(View) placeholder}, if any, is shown in the meantime. Useful to
+     * reduce the time to first frame of activities whose main content is in a ViewSwitcher.
+     *
+     * @param defer true to defer the first page
+     * @see #setOnInitialPageReadyListener(OnInitialPageReadyListener)
+     */
+    public void setDeferInitialPopulate(boolean defer) {
+        mDeferInitialPopulate = defer;
+    }
+
+    public boolean getDeferInitialPopulate() {
+        return mDeferInitialPopulate;
+    }
+
+    /**
+     * Set a listener that will be invoked when the first page of each adapter has been added.
+     *
+     * @param listener listener to set, or null to clear it
+     */
+    public void setOnInitialPageReadyListener(@Nullable OnInitialPageReadyListener listener) {
+        mInitialPageReadyListener = listener;
+    }
+
+    /**
+     * Set the store that keeps this ViewSwitcher's pages alive across configuration changes.
+     * Only used if the adapter implements {@link PageRetainer}. Must be set before the first
+     * layout of the recreated ViewSwitcher for its pages to be reattached.
+     *
+     * @param store Store to use, or null to stop retaining pages
+     */
+    public void setRetainedPageStore(@Nullable RetainedPageStore store) {
+        mRetainedPageStore = store;
+    }
+
+    @Nullable
+    public RetainedPageStore getRetainedPageStore() {
+        return mRetainedPageStore;
+    }
+
+    /**
+     * Set whether changes notified by the adapter are processed right away, or once per frame.
+     * When enabled, a burst of {@link PagerAdapter#notifyDataSetChanged()} calls results in a
+     * single update at the start of the next frame, and a single
+     * {@link OnDataSetChangeListener#onDataSetChanged(ViewSwitcher)} dispatch to mediators.
+     * A pending update is processed early if the current item is changed or the pages are
+     * populated before then. Disabled by default.
+     *
+     * @param coalesce true to process at most one data set change per frame
+     */
+    public void setCoalesceDataSetChanges(boolean coalesce) {
+        mCoalesceDataSetChanges = coalesce;
+        if (!coalesce) {
+            processPendingDataSetChange();
+        }
+    }
+
+    public boolean getCoalesceDataSetChanges() {
+        return mCoalesceDataSetChanges;
+    }
+
+    /**
+     * Set the pool shared by the RecyclerViews of this ViewSwitcher's pages, for example to share
+     * one pool across several ViewSwitchers. Limit the views kept per view type with
+     * {@link RecyclerView.RecycledViewPool#setMaxRecycledViews(int, int)}.
+     *
+     * @param pool The pool to share, or null to create one on demand
+     * @see #setInjectRecycledViewPool(boolean)
+     */
+    public void setRecycledViewPool(@Nullable RecyclerView.RecycledViewPool pool) {
+        mRecycledViewPool = pool;
+    }
+
+    /**
+     * Returns the pool shared by the RecyclerViews of this ViewSwitcher's pages. Pages that set
+     * up their RecyclerViews themselves can look it up here.
+     */
+    @NonNull
+    public RecyclerView.RecycledViewPool getRecycledViewPool() {
+        if (mRecycledViewPool == null) {
+            mRecycledViewPool = new RecyclerView.RecycledViewPool();
+        }
+        return mRecycledViewPool;
+    }
+
+    /**
+     * Set whether the RecyclerViews found in a page are given {@link #getRecycledViewPool()}
+     * when the page is shown, so that a new page can bind item views another page has created
+     * instead of inflating its own. When a page is destroyed, the item views of its
+     * RecyclerViews using the pool are recycled into it for the next page. The pages should use
+     * the same view types for the same item layouts. Disabled by default.
+     *
+     * @param inject true to share the pool with the RecyclerViews of every page
+     */
+    public void setInjectRecycledViewPool(boolean inject) {
+        mInjectRecycledViewPool = inject;
+    }
+
+    public boolean getInjectRecycledViewPool() {
+        return mInjectRecycledViewPool;
+    }
+
+    private void injectRecycledViewPool(@NonNull ItemInfo ii) {
+        if (!mInjectRecycledViewPool) {
+            return;
+        }
+        final View page = viewForObject(ii.object);
+        if (page != null) {
+            injectRecycledViewPool(page, getRecycledViewPool());
+        }
+    }
+
+    private static void injectRecycledViewPool(View view, RecyclerView.RecycledViewPool pool) {
+        if (view instanceof RecyclerView) {
+            final RecyclerView recyclerView = (RecyclerView) view;
+            if (recyclerView.getRecycledViewPool() != pool) {
+                recyclerView.setRecycledViewPool(pool);
+            }
+            // Item views are not pages, don't look for nested RecyclerViews.
+            return;
+        }
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0, z = group.getChildCount(); i < z; i++) {
+                injectRecycledViewPool(group.getChildAt(i), pool);
+            }
+        }
+    }
+
+    /**
+     * Moves the item views of a destroyed page's RecyclerViews using our pool into it.
+     */
+    private static void recycleItemViews(View view, RecyclerView.RecycledViewPool pool) {
+        if (view instanceof RecyclerView) {
+            final RecyclerView recyclerView = (RecyclerView) view;
+            if (recyclerView.getRecycledViewPool() == pool && recyclerView.getAdapter() != null) {
+                // Unlike setAdapter(null), swapping keeps the pool from being cleared when this
+                // is the last RecyclerView attached to it.
+                recyclerView.swapAdapter(null, true);
+            }
+            return;
+        }
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0, z = group.getChildCount(); i < z; i++) {
+                recycleItemViews(group.getChildAt(i), pool);
+            }
+        }
+    }
+
+    /**
+     * Set what happens to the current page while this ViewSwitcher is detached from the window.
+     *
+     * @param policy One of {@link #DETACH_POLICY_DEFAULT}, {@link #DETACH_POLICY_KEEP_PAGE} or
+     *               {@link #DETACH_POLICY_RELEASE_PAGE}
+     */
+    public void setDetachPolicy(@DetachPolicy int policy) {
+        mDetachPolicy = policy;
+        if (policy != DETACH_POLICY_RELEASE_PAGE && mReleasePageHandler != null) {
+            mReleasePageHandler.removeCallbacks(mReleasePageRunnable);
+        }
+    }
+
+    @DetachPolicy
+    public int getDetachPolicy() {
+        return mDetachPolicy;
+    }
+
+    /**
+     * Set a tracker that records every page instantiated and destroyed from now on, to verify
+     * that destroyed pages can be garbage collected. For tests and debug builds only.
+     *
+     * @param tracker Tracker to use, or null to stop tracking
+     */
+    public void setPageLeakTracker(@Nullable PageLeakTracker tracker) {
+        mPageLeakTracker = tracker;
+    }
+
+    @Nullable
+    public PageLeakTracker getPageLeakTracker() {
+        return mPageLeakTracker;
+    }
+
+    /**
+     * Returns the stable id of the item at the given position of the current adapter, see
+     * {@link StableIdProvider}.
+     *
+     * @param position Position within the current adapter
+     * @return The item's stable id, or its position if the adapter has no stable ids
+     */
+    public long getItemId(int position) {
+        if (mAdapter instanceof StableIdProvider) {
+            return ((StableIdProvider) mAdapter).getItemId(position);
+        }
+        return position;
+    }
+
+    ItemInfo addNewItem(int position) {
+        ItemInfo ii = new ItemInfo();
+        ii.position = position;
+        ii.object = instantiateItemObject(position);
+        mCurrItemInfo = ii;
+        return ii;
+    }
+
+    private Object instantiateItemObject(int position) {
+        final Object retained = mAdapter instanceof PageRetainer && mRetainedPageStore != null
+                ? mRetainedPageStore.remove(getItemId(position)) : null;
+        final Object object;
+        if (retained != null) {
+            if (retained instanceof View
+                    && ((View) retained).getContext() instanceof MutableContextWrapper) {
+                ((MutableContextWrapper) ((View) retained).getContext())
+                        .setBaseContext(getContext());
+            }
+            beginInstantiating(position, mRetainedPageStore.removeScope(getItemId(position)));
+            object = ((PageRetainer) mAdapter).instantiateRetainedItem(this, position, retained);
+            endInstantiating(object);
+        } else {
+            beginInstantiating(position, null);
+            object = mAdapter.instantiateItem(this, position);
+            endInstantiating(object);
+            restorePageState(position, object);
+            bindPreloadedData(position, object);
+        }
+        mInstantiateCount++;
+        if (mPageLeakTracker != null) {
+            mPageLeakTracker.onPageInstantiated(position, object);
+        }
+        return object;
+    }
+
+    /**
+     * Completes a page started by a {@link PageBuilder}. Must be called between the adapter's
+     * startUpdate and finishUpdate.
+     */
+    private void finishBuiltItem(@NonNull ItemInfo ii) {
+        final PageBuilder builder = ii.builder;
+        ii.builder = null;
+        beginInstantiating(ii.position, null);
+        ii.object = builder.finishBuild(this);
+        endInstantiating(ii.object);
+        restorePageState(ii.position, ii.object);
+        bindPreloadedData(ii.position, ii.object);
+        mInstantiateCount++;
+        if (mPageLeakTracker != null) {
+            mPageLeakTracker.onPageInstantiated(ii.position, ii.object);
+        }
+    }
+
+    private void destroyItemObject(int position, @NonNull Object object) {
+        if (mRetainedItemInfo != null && mRetainedItemInfo.object == object) {
+            // Destroyed after all, take it back from the store.
+            mRetainedItemInfo = null;
+            mRetainedPageStore.remove(getItemId(position));
+        }
+        // Stop the page's work first, so none of it lands while the page is torn down.
+        final PageScope scope = mPageScopes.isEmpty() ? null : mPageScopes.remove(object);
+        if (scope != null) {
+            scope.cancel();
+        }
+        final View page = mRecycledViewPool != null ? viewForObject(object) : null;
+        mAdapter.destroyItem(this, position, object);
+        if (page != null) {
+            // After destroyItem, so adapters saving the page's state still see its items.
+            recycleItemViews(page, mRecycledViewPool);
+        }
+        mDestroyCount++;
+        mPreloadCache.onPageDestroyed(object);
+        if (mPageLeakTracker != null) {
+            mPageLeakTracker.onPageDestroyed(object);
+        }
+    }
+
+    private void bindPreloadedData(int position, @NonNull Object object) {
+        if (mAdapter instanceof PageDataPreloader) {
+            mPreloadCache.bind((PageDataPreloader) mAdapter, position, getItemId(position),
+                    object);
+        }
+    }
+
+    /**
+     * Returns the scope of the page at the given position, cancelled once the page is destroyed.
+     * The adapter can already get it from {@link PagerAdapter#instantiateItem(ViewGroup, int)},
+     * or {@link PageBuilder#finishBuild(ViewGroup)} for pages built incrementally.
+     *
+     * @param position The position of a live page
+     * @return The page's scope, or null if no page exists for that position
+     */
+    @Nullable
+    public PageScope getPageScope(int position) {
+        if (position >= 0 && position == mInstantiatingPosition) {
+            if (mInstantiatingScope == null) {
+                mInstantiatingScope = new PageScope();
+            }
+            return mInstantiatingScope;
+        }
+        if (mCurrItemInfo != null && mCurrItemInfo.position == position
+                && mCurrItemInfo.object != null) {
+            return getPageScope(mCurrItemInfo.object);
+        }
+        for (int i = 0, z = mPrewarmedItems.size(); i < z; i++) {
+            final ItemInfo ii = mPrewarmedItems.get(i);
+            if (ii.position == position && ii.object != null) {
+                return getPageScope(ii.object);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the scope of the given page object, as returned by the adapter.
+     *
+     * @return The page's scope, or null if the object is not a live page
+     */
+    @Nullable
+    public PageScope getPageScope(@NonNull Object object) {
+        PageScope scope = mPageScopes.get(object);
+        if (scope == null && positionForLivePage(object) >= 0) {
+            scope = new PageScope();
+            scope.setResumed(mCurrItemInfo != null && mCurrItemInfo.object == object);
+            mPageScopes.put(object, scope);
+        }
+        return scope;
+    }
+
+    private void beginInstantiating(int position, @Nullable PageScope scope) {
+        mInstantiatingPosition = position;
+        mInstantiatingScope = scope;
+    }
+
+    private void endInstantiating(@NonNull Object object) {
+        final PageScope scope = mInstantiatingScope;
+        mInstantiatingPosition = -1;
+        mInstantiatingScope = null;
+        if (scope != null) {
+            mPageScopes.put(object, scope);
+        }
+    }
+
+    private void updatePageScopes() {
+        if (mPageScopes.isEmpty()) {
+            return;
+        }
+        final Object current = mCurrItemInfo != null ? mCurrItemInfo.object : null;
+        for (Map.Entry<Object, PageScope> entry : mPageScopes.entrySet()) {
+            entry.getValue().setResumed(entry.getKey() == current);
+        }
+    }
+
+    private void cancelPageScopes() {
+        for (PageScope scope : mPageScopes.values()) {
+            scope.cancel();
+        }
+        mPageScopes.clear();
+    }
+
+    /**
+     * Returns the position of the given page if it is still alive, -1 otherwise.
+     */
+    int positionForLivePage(@NonNull Object object) {
+        if (mCurrItemInfo != null && mCurrItemInfo.object == object) {
+            return mCurrItemInfo.position;
+        }
+        for (int i = 0, z = mPrewarmedItems.size(); i < z; i++) {
+            final ItemInfo ii = mPrewarmedItems.get(i);
+            if (ii.object == object) {
+                return ii.position;
+            }
+        }
+        return -1;
+    }
+
+    void onAdapterDataSetChanged() {
+        if (!mCoalesceDataSetChanges) {
+            dataSetChanged();
+            return;
+        }
+        mDataSetChangePending = true;
+        if (getWindowToken() != null) {
+            mDataSetChangeCallback.post(this);
+        }
+    }
+
+    private void processPendingDataSetChange() {
+        if (!mDataSetChangePending) {
+            return;
+        }
+        mDataSetChangePending = false;
+        mDataSetChangeCallback.cancel();
+        if (mAdapter != null) {
+            dataSetChanged();
+        }
+    }
+
+    void dataSetChanged() {
+        // This method only gets called if our observer is attached, so mAdapter is non-null.
+        mUpdatingDataSet = true;
+        endPageTransition();
+        // Positions may have moved, rebuild the pending page from scratch and drop the
+        // prewarmed ones.
+        final boolean wasBuilding = cancelPageBuild();
+        clearPrewarmedItems();
+        // Preloaded data may be stale now.
+        mPreloadCache.cancelAll();
+        if (!(mAdapter instanceof StableIdProvider)) {
+            // Remembered focus and states are keyed by position, which may now be another item.
+            mPageFocus.clear();
+            if (mPageStates.size() > 0) {
+                mPageStates = new PageStateStore();
+            }
+        } else if (mPageStates.size() > 0 || mPageFocus.size() > 0) {
+            pruneRemovedItems();
+        }
+
+        final int adapterCount = mAdapter.getCount();
+        mExpectedAdapterCount = adapterCount;
+        boolean needPopulate = mCurrItemInfo == null || wasBuilding;
+        int newCurrItem = mCurItem;
+
+        boolean isUpdating = false;
+        ItemInfo ii = mCurrItemInfo;
+        if (ii != null) {
+            final int newPos = mAdapter.getItemPosition(ii.object);
+
+            if (newPos == PagerAdapter.POSITION_NONE) {
+                mCurrItemInfo = null;
+
+                mAdapter.startUpdate(this);
+                isUpdating = true;
+
+                destroyItemObject(mCurItem, ii.object);
+                needPopulate = true;
+
+                if (mCurItem == ii.position) {
+                    newCurrItem = Math.max(0, Math.min(mCurItem, adapterCount - 1));
+                    needPopulate = true;
+                }
+            } else if (ii.position != newPos) {
+                if (ii.position == mCurItem) {
+                    // Our current item changed position. Follow it.
+                    newCurrItem = newPos;
+                }
+                ii.position = newPos;
+                needPopulate = true;
+            }
+        }
+
+        if (isUpdating) {
+            mAdapter.finishUpdate(this);
+        }
+
+        if (needPopulate) {
+            setCurrentItemInternal(newCurrItem, true);
+            requestLayout();
+        }
+
+        mUpdatingDataSet = false;
+        dispatchOnDataSetChanged();
+    }
+
+    private void dispatchOnDataSetChanged() {
+        if (mDataSetChangeListeners != null) {
+            for (int i = 0, z = mDataSetChangeListeners.size(); i < z; i++) {
+                mDataSetChangeListeners.get(i).onDataSetChanged(this);
+            }
+        }
+    }
+
+    void populate() {
+        // The current item may move with the pending change.
+        processPendingDataSetChange();
+        populate(mCurItem);
+    }
+
+    void populate(int newCurrentItem) {
+        if (mCurItem != newCurrentItem) {
+            mCurItem = newCurrentItem;
+        }
+
+        if (mAdapter == null) {
+            return;
+        }
+
+        // Bail now if we are waiting to populate.  This is to hold off
+        // on creating views from the time the user releases their finger to
+        // fling to a new position until we have finished the scroll to
+        // that position, avoiding glitches from happening at that point.
+        if (mPopulatePending) {
+            if (DEBUG) Log.i(TAG, "populate is pending, skipping for now...");
+            return;
+        }
+
+        // Also, don't populate until we are attached to a window.  This is to
+        // avoid trying to populate before we have restored our view hierarchy
+        // state and conflicting with what is restored.
+        if (getWindowToken() == null) {
+            return;
+        }
+
+        if (mOutgoingItemInfo != null && mOutgoingView == null) {
+            // A transition was cut short while detached, finish destroying its outgoing page.
+            endPageTransition();
+        }
+
+        final int N = mAdapter.getCount();
+
+        if (N != mExpectedAdapterCount) {
+            String resName;
+            try {
+                resName = getResources().getResourceName(getId());
+            } catch (Resources.NotFoundException e) {
+                resName = Integer.toHexString(getId());
+            }
+            throw new IllegalStateException("The application's PagerAdapter changed the adapter's"
+                    + " contents without calling PagerAdapter#notifyDataSetChanged!"
+                    + " Expected adapter item count: " + mExpectedAdapterCount + ", found: " + N
+                    + " Pager id: " + resName
+                    + " Pager class: " + getClass()
+                    + " Problematic adapter: " + mAdapter.getClass());
+        }
+
+        if (mCurrItemInfo != null && mCurrItemInfo.position == newCurrentItem
+                && mBuildingItemInfo == null) {
+            // The current page is already in place, e.g. a measure pass after being reattached.
+            return;
+        }
+
+        mAdapter.startUpdate(this);
+
+        if (mBuildingItemInfo != null && mBuildingItemInfo.position != newCurrentItem) {
+            // The page being built is no longer wanted.
+            cancelPageBuild();
+        }
+
+        ItemInfo outgoing = null;
+        if ((mCurrItemInfo == null || mCurrItemInfo.position != newCurrentItem)
+                && mBuildingItemInfo == null) {
+            if (N > 0) {
+                // The page is wanted now, its data should not wait behind other pages'.
+                mPreloadCache.promote(getItemId(newCurrentItem),
+                        PageWorkScheduler.PRIORITY_CURRENT);
+            }
+            mSwitchStartNanos = System.nanoTime();
+            ItemInfo ii = N > 0 ? takePrewarmedItem(newCurrentItem) : null;
+            if (ii == null && N > 0 && !hasRetainedPage(newCurrentItem)) {
+                final PageBuilder builder = createPageBuilder(newCurrentItem);
+                if (builder != null) {
+                    ii = new ItemInfo();
+                    ii.position = newCurrentItem;
+                    ii.builder = builder;
+                }
+            }
+            if (ii != null && ii.builder != null) {
+                // Keep the current page attached and interactive until the new one is built.
+                startPageBuild(ii);
+            } else {
+                if (mCurrItemInfo != null) {
+                    outgoing = releaseCurrentItem(N > 0);
+                }
+                if (ii != null) {
+                    mCurrItemInfo = ii;
+                } else if (N > 0) {
+                    addNewItem(newCurrentItem);
+                }
+                if (mCurrItemInfo != null) {
+                    mAdapter.setPrimaryItem(this, mCurItem, mCurrItemInfo.object);
+                }
+                updatePageScopes();
+            }
+        }
+
+        mAdapter.finishUpdate(this);
+
+        if (mCurrItemInfo != null && mBuildingItemInfo == null) {
+            removePagePlaceholder(viewForObject(mCurrItemInfo.object));
+            restoreReleasedPageState();
+            injectRecycledViewPool(mCurrItemInfo);
+            dispatchInitialPageReady();
+            recordSwitchTime(mCurrItemInfo.position);
+        }
+
+        if (mRetainedPageStore != null && !mRetainedPageStore.isEmpty()) {
+            // Whatever the first page did not reclaim is not going to be used.
+            mRetainedPageStore.discardAll(
+                    mAdapter instanceof PageRetainer ? (PageRetainer) mAdapter : null);
+        }
+
+        if (outgoing != null) {
+            startPageTransition(outgoing, mCurrItemInfo);
+        }
+
+        if (mCurrItemInfo != null && mBuildingItemInfo == null) {
+            restorePageFocus(mCurrItemInfo);
+        }
+    }
+
+    /**
+     * Remembers which view of the current page has focus, so that it can be focused again when
+     * the page comes back. Only walks up from the focused view, never searches the page.
+     */
+    private void rememberPageFocus(@NonNull ItemInfo ii) {
+        final View focused = findFocus();
+        if (focused == null || focused == this || infoForAnyChild(focused) != ii) {
+            return;
+        }
+        // The page's view is about to go away and take the focus with it.
+        mPageFocusPending = true;
+        final long itemId = getItemId(ii.position);
+        PageFocus pageFocus = mPageFocus.get(itemId);
+        if (pageFocus == null) {
+            pageFocus = new PageFocus();
+            mPageFocus.put(itemId, pageFocus);
+        }
+        pageFocus.view = new WeakReference<>(focused);
+        pageFocus.id = focused.getId();
+    }
+
+    /**
+     * Captures the state of a page that is being hidden, so that saving the instance state later
+     * does not have to. A page that is destroyed without having been shown keeps the state it
+     * was restored from.
+     */
+    private void capturePageState(@NonNull ItemInfo ii) {
+        if (!(mAdapter instanceof PageStateSaver) || ii.object == null) {
+            return;
+        }
+        final Parcelable state = ((PageStateSaver) mAdapter).savePageState(ii.position, ii.object);
+        final long itemId = getItemId(ii.position);
+        if (state != mPageStates.get(itemId)) {
+            mPageStates.put(itemId, state);
+        }
+    }
+
+    /**
+     * Drops the captured states and remembered focus of items the adapter no longer has. Moved
+     * items keep theirs, they are keyed by stable id.
+     */
+    private void pruneRemovedItems() {
+        final StableIdProvider idProvider = (StableIdProvider) mAdapter;
+        final long[] itemIds = new long[mAdapter.getCount()];
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIds[i] = idProvider.getItemId(i);
+        }
+        Arrays.sort(itemIds);
+        mPageStates.retainAll(itemIds);
+        for (int i = mPageFocus.size() - 1; i >= 0; i--) {
+            if (Arrays.binarySearch(itemIds, mPageFocus.keyAt(i)) < 0) {
+                mPageFocus.removeAt(i);
+            }
+        }
+    }
+
+    private void restorePageState(int position, @NonNull Object object) {
+        if (!(mAdapter instanceof PageStateSaver) || mPageStates.size() == 0) {
+            return;
+        }
+        final Parcelable state = mPageStates.get(getItemId(position));
+        if (state != null) {
+            ((PageStateSaver) mAdapter).restorePageState(position, object, state);
+        }
+    }
+
+    /**
+     * Moves focus into the new current page if the previous page, or this ViewSwitcher itself,
+     * had it. Goes straight to the view remembered for the page if it is still part of it, and
+     * only looks it up by id if the page was recreated since. Never searches for a focusable:
+     * a page that was never focused before gets the focus itself if it is focusable, otherwise
+     * the ViewSwitcher keeps it and the next key press moves it into the page.
+     */
+    private void restorePageFocus(@NonNull ItemInfo ii) {
+        if (!mPageFocusPending && !isFocused()) {
+            return;
+        }
+        mPageFocusPending = false;
+        final View page = viewForObject(ii.object);
+        if (page == null) {
+            return;
+        }
+        final PageFocus pageFocus = mPageFocus.get(getItemId(ii.position));
+        View target = null;
+        if (pageFocus != null) {
+            target = pageFocus.view.get();
+            if (target == null || !isDescendantOf(target, page)) {
+                target = pageFocus.id != View.NO_ID ? page.findViewById(pageFocus.id) : null;
+            }
+        }
+        if (target != null && target.requestFocus()) {
+            return;
+        }
+        if (page.isFocusable() && page.requestFocus()) {
+            return;
+        }
+        // Take the focus from the outgoing page without a search of the new one.
+        final int descendantFocusability = getDescendantFocusability();
+        setDescendantFocusability(FOCUS_BLOCK_DESCENDANTS);
+        requestFocus();
+        setDescendantFocusability(descendantFocusability);
+    }
+
+    /**
+     * Walks up from the view, which costs the depth of the page rather than its size.
+     */
+    private static boolean isDescendantOf(@NonNull View view, @NonNull View ancestor) {
+        View current = view;
+        while (current != ancestor) {
+            final ViewParent parent = current.getParent();
+            if (!(parent instanceof View)) {
+                return false;
+            }
+            current = (View) parent;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the current page. Returns it if it should be transitioned out by
+     * {@link #startPageTransition(ItemInfo, ItemInfo)}, otherwise destroys it and returns null.
+     * Must be called between the adapter's startUpdate and finishUpdate.
+     */
+    @Nullable
+    private ItemInfo releaseCurrentItem(boolean animate) {
+        final ItemInfo ii = mCurrItemInfo;
+        rememberPageFocus(ii);
+        capturePageState(ii);
+        mCurrItemInfo = null;
+        // A new switch interrupts any running transition.
+        endPageTransition();
+        if (animate && canRunPageTransition()) {
+            return ii;
+        }
+        destroyItemObject(ii.position, ii.object);
+        return null;
+    }
+
+    private boolean hasRetainedPage(int position) {
+        return mAdapter instanceof PageRetainer && mRetainedPageStore != null
+                && mRetainedPageStore.contains(getItemId(position));
+    }
+
+    /**
+     * Hands the current page to the {@link RetainedPageStore} as the activity's state is saved
+     * ahead of a configuration change, while the adapter and its host are still usable. The page
+     * keeps being shown until this ViewSwitcher is detached, see
+     * {@link #releaseRetainedPage()}.
+     */
+    private void retainPages() {
+        final ItemInfo ii = mCurrItemInfo;
+        if (ii == null || mBuildingItemInfo != null || mRetainedItemInfo != null) {
+            return;
+        }
+        final Object retained =
+                ((PageRetainer) mAdapter).onRetainPage(this, ii.position, ii.object);
+        if (retained == null) {
+            return;
+        }
+        if (retained instanceof View
+                && !(((View) retained).getContext() instanceof MutableContextWrapper)
+                && findActivity(((View) retained).getContext()) != null) {
+            Log.w(TAG, "Not retaining page " + ii.position + ", its view would leak the activity;"
+                    + " create it with a MutableContextWrapper");
+            return;
+        }
+        mRetainedPageStore.put(getItemId(ii.position), retained, (PageRetainer) mAdapter);
+        mRetainedItemInfo = ii;
+    }
+
+    /**
+     * Lets go of the page handed to the store without touching the adapter, whose host is being
+     * torn down. The other pages die with the activity.
+     */
+    private void releaseRetainedPage() {
+        final ItemInfo ii = mRetainedItemInfo;
+        mRetainedItemInfo = null;
+        if (ii != mCurrItemInfo) {
+            return;
+        }
+        mCurrItemInfo = null;
+        final long itemId = getItemId(ii.position);
+        // The page's work carries on for the recreated ViewSwitcher.
+        mRetainedPageStore.putScope(itemId, mPageScopes.remove(ii.object));
+        final Object retained = mRetainedPageStore.peek(itemId);
+        if (retained instanceof View) {
+            final View page = (View) retained;
+            if (page.getContext() instanceof MutableContextWrapper) {
+                ((MutableContextWrapper) page.getContext())
+                        .setBaseContext(page.getContext().getApplicationContext());
+            }
+            if (page.getParent() == this) {
+                // Already detached along with us, so this does not dispatch it again.
+                removeView(page);
+            }
+        }
+    }
+
+    /**
+     * Destroys the current page of a ViewSwitcher that stayed detached, keeping its view
+     * hierarchy state for the page created once reattached. See
+     * {@link #DETACH_POLICY_RELEASE_PAGE}.
+     */
+    void releaseDetachedPage() {
+        final ItemInfo ii = mCurrItemInfo;
+        if (ii == null || getWindowToken() != null || isHostActivityDestroyed()) {
+            // The adapter may not be usable with its host gone, the page dies with it anyway.
+            return;
+        }
+        cancelPageBuild();
+        clearPrewarmedItems();
+        endPageTransition();
+
+        final View view = viewForObject(ii.object);
+        if (view != null) {
+            final SparseArray<Parcelable> state = new SparseArray<>();
+            view.saveHierarchyState(state);
+            mReleasedPageState = state;
+            mReleasedPageId = getItemId(ii.position);
+        }
+        capturePageState(ii);
+        mCurrItemInfo = null;
+        mAdapter.startUpdate(this);
+        destroyItemObject(ii.position, ii.object);
+        mAdapter.finishUpdate(this);
+    }
+
+    private void restoreReleasedPageState() {
+        final SparseArray<Parcelable> state = mReleasedPageState;
+        if (state == null) {
+            return;
+        }
+        mReleasedPageState = null;
+        if (getItemId(mCurrItemInfo.position) == mReleasedPageId) {
+            final View view = viewForObject(mCurrItemInfo.object);
+            if (view != null) {
+                view.restoreHierarchyState(state);
+            }
+        }
+    }
+
+    @Nullable
+    private Activity findActivity() {
+        return findActivity(getContext());
+    }
+
+    @Nullable
+    private static Activity findActivity(@Nullable Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    private boolean isChangingConfigurations() {
+        final Activity activity = findActivity();
+        return activity != null && activity.isChangingConfigurations();
+    }
+
+    private boolean isHostActivityDestroyed() {
+        final Activity activity = findActivity();
+        if (activity == null) {
+            return false;
+        }
+        if (activity.isFinishing() || activity.isChangingConfigurations()) {
+            return true;
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                && activity.isDestroyed();
+    }
+
+    @Nullable
+    private PageBuilder createPageBuilder(int position) {
+        if (mAdapter instanceof PageBuilderProvider) {
+            return ((PageBuilderProvider) mAdapter).createPageBuilder(this, position);
+        }
+        return null;
+    }
+
+    private void startPageBuild(@NonNull ItemInfo ii) {
+        mBuildingItemInfo = ii;
+        final View placeholder = getShownPlaceholder();
+        if (mCurrItemInfo == null && placeholder != null && placeholder.getParent() == null) {
+            addView(placeholder);
+        }
+        mPageBuildCallback.post(this);
+    }
+
+    /**
+     * Advances the pending page build until the frame budget is used up, swapping the page in
+     * once it is complete. At least one step runs per frame so the build always makes progress.
+     * The current item is built first, prewarmed pages only when it is done.
+     */
+    void advancePageBuild(long frameTimeNanos) {
+        if (mAdapter == null) {
+            return;
+        }
+        final ItemInfo ii = mBuildingItemInfo != null
+                ? mBuildingItemInfo : nextPrewarmedItemToBuild();
+        if (ii == null) {
+            return;
+        }
+        final long deadline = frameTimeNanos + mPageBuildBudgetNanos;
+        boolean complete;
+        do {
+            complete = ii.builder.buildStep();
+        } while (!complete && System.nanoTime() < deadline);
+        if (complete) {
+            if (ii == mBuildingItemInfo) {
+                finishPageBuild(ii);
+            } else {
+                mAdapter.startUpdate(this);
+                finishBuiltItem(ii);
+                mAdapter.finishUpdate(this);
+                scheduleWarmUp();
+            }
+        }
+        if (mBuildingItemInfo != null || nextPrewarmedItemToBuild() != null) {
+            mPageBuildCallback.post(this);
+        }
+    }
+
+    @Nullable
+    private ItemInfo nextPrewarmedItemToBuild() {
+        // Most recently requested first, it is the most likely to be selected next.
+        for (int i = mPrewarmedItems.size() - 1; i >= 0; i--) {
+            final ItemInfo ii = mPrewarmedItems.get(i);
+            if (ii.builder != null) {
+                return ii;
+            }
+        }
+        return null;
+    }
+
+    private void finishPageBuild(@NonNull ItemInfo ii) {
+        mBuildingItemInfo = null;
+
+        mAdapter.startUpdate(this);
+        final ItemInfo outgoing = mCurrItemInfo != null ? releaseCurrentItem(true) : null;
+        finishBuiltItem(ii);
+        mCurrItemInfo = ii;
+        mAdapter.setPrimaryItem(this, ii.position, ii.object);
+        updatePageScopes();
+        mAdapter.finishUpdate(this);
 
-                mAdapter.startUpdate(this);
-                isUpdating = true;
+        removePagePlaceholder(viewForObject(ii.object));
+        restoreReleasedPageState();
+        injectRecycledViewPool(ii);
+        dispatchInitialPageReady();
+        recordSwitchTime(ii.position);
+        if (outgoing != null) {
+            startPageTransition(outgoing, ii);
+        }
+        restorePageFocus(ii);
+        requestLayout();
+    }
 
-                mAdapter.destroyItem(this, mCurItem, ii.object);
-                needPopulate = true;
+    /**
+     * Cancels the pending page build, if any.
+     *
+     * @return true if a build was cancelled
+     */
+    boolean cancelPageBuild() {
+        final ItemInfo ii = mBuildingItemInfo;
+        if (ii == null) {
+            return false;
+        }
+        mBuildingItemInfo = null;
+        if (nextPrewarmedItemToBuild() == null) {
+            mPageBuildCallback.cancel();
+        }
+        removePagePlaceholder(null);
+        final PageBuilder builder = ii.builder;
+        ii.builder = null;
+        builder.cancel();
+        return true;
+    }
 
-                if (mCurItem == ii.position) {
-                    newCurrItem = Math.max(0, Math.min(mCurItem, adapterCount - 1));
-                    needPopulate = true;
-                }
-            } else if (ii.position != newPos) {
-                if (ii.position == mCurItem) {
-                    // Our current item changed position. Follow it.
-                    newCurrItem = newPos;
-                }
-                ii.position = newPos;
-                needPopulate = true;
+    @Nullable
+    private ItemInfo takePrewarmedItem(int position) {
+        for (int i = 0, size = mPrewarmedItems.size(); i < size; i++) {
+            final ItemInfo ii = mPrewarmedItems.get(i);
+            if (ii.position == position) {
+                mPrewarmedItems.remove(i);
+                return ii;
             }
         }
+        return null;
+    }
 
-        if (isUpdating) {
+    private void destroyPrewarmedItem(@NonNull ItemInfo ii) {
+        mPrewarmedItems.remove(ii);
+        if (ii.builder != null) {
+            final PageBuilder builder = ii.builder;
+            ii.builder = null;
+            builder.cancel();
+        } else if (mAdapter != null) {
+            mAdapter.startUpdate(this);
+            destroyItemObject(ii.position, ii.object);
             mAdapter.finishUpdate(this);
         }
-
-        if (needPopulate) {
-            setCurrentItemInternal(newCurrItem, true);
-            requestLayout();
-        }
     }
 
-    void populate() {
-        populate(mCurItem);
+    private boolean shouldDeferInitialPopulate() {
+        return mDeferInitialPopulate && mInitialPageReadyPending && mAdapter != null
+                && mCurrItemInfo == null && mBuildingItemInfo == null
+                && !hasRetainedPage(mCurItem);
     }
 
-    void populate(int newCurrentItem) {
-        if (mCurItem != newCurrentItem) {
-            mCurItem = newCurrentItem;
+    /**
+     * Shows the placeholder and posts the real populate behind the frame being laid out.
+     */
+    private void deferInitialPopulate() {
+        final View placeholder = getShownPlaceholder();
+        if (placeholder != null && placeholder.getParent() == null) {
+            addView(placeholder);
+        }
+        if (!mDeferredPopulatePosted) {
+            mDeferredPopulatePosted = true;
+            post(mDeferredPopulateRunnable);
         }
+    }
 
-        if (mAdapter == null) {
-            return;
+    private void cancelDeferredPopulate() {
+        if (mDeferredPopulatePosted) {
+            mDeferredPopulatePosted = false;
+            removeCallbacks(mDeferredPopulateRunnable);
         }
+    }
 
-        // Bail now if we are waiting to populate.  This is to hold off
-        // on creating views from the time the user releases their finger to
-        // fling to a new position until we have finished the scroll to
-        // that position, avoiding glitches from happening at that point.
-        if (mPopulatePending) {
-            if (DEBUG) Log.i(TAG, "populate is pending, skipping for now...");
+    private void dispatchInitialPageReady() {
+        if (!mInitialPageReadyPending) {
             return;
         }
+        mInitialPageReadyPending = false;
+        if (mInitialPageReadyListener != null) {
+            mInitialPageReadyListener.onInitialPageReady(this, mCurrItemInfo.position);
+        }
+    }
 
-        // Also, don't populate until we are attached to a window.  This is to
-        // avoid trying to populate before we have restored our view hierarchy
-        // state and conflicting with what is restored.
-        if (getWindowToken() == null) {
-            return;
+    /**
+     * @param page The page taking the placeholder's place, if any. A shown snapshot stays until
+     *             the page has drawn, so that its first frame is not blank.
+     */
+    private void removePagePlaceholder(@Nullable View page) {
+        if (mPagePlaceholder != null && mPagePlaceholder.getParent() == this) {
+            removeView(mPagePlaceholder);
+        }
+        if (mSnapshotPlaceholder != null) {
+            if (page != null && page.getVisibility() == VISIBLE
+                    && mSnapshotPlaceholder.getParent() == this) {
+                mSnapshotReplacement = page;
+                invalidate();
+            } else {
+                removeSnapshotPlaceholder();
+            }
         }
+    }
 
-        mAdapter.startUpdate(this);
+    private void removeSnapshotPlaceholder() {
+        // Only ever shown once.
+        if (mSnapshotPlaceholder != null && mSnapshotPlaceholder.getParent() == this) {
+            removeView(mSnapshotPlaceholder);
+        }
+        mSnapshotPlaceholder = null;
+        mSnapshotReplacement = null;
+    }
 
-        final int N = mAdapter.getCount();
+    private boolean canRunPageTransition() {
+        return mPageTransition != TRANSITION_NONE && mPageTransitionDuration > 0
+                && !mFirstLayout && ViewCompat.isLaidOut(this) && isShown();
+    }
 
-        if (N != mExpectedAdapterCount) {
-            String resName;
-            try {
-                resName = getResources().getResourceName(getId());
-            } catch (Resources.NotFoundException e) {
-                resName = Integer.toHexString(getId());
+    @Nullable
+    private View viewForObject(@Nullable Object object) {
+        if (object == null) {
+            return null;
+        }
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            final View child = getChildAt(i);
+            if (mAdapter.isViewFromObject(child, object)) {
+                return child;
             }
-            throw new IllegalStateException("The application's PagerAdapter changed the adapter's"
-                    + " contents without calling PagerAdapter#notifyDataSetChanged!"
-                    + " Expected adapter item count: " + mExpectedAdapterCount + ", found: " + N
-                    + " Pager id: " + resName
-                    + " Pager class: " + getClass()
-                    + " Problematic adapter: " + mAdapter.getClass());
         }
+        return null;
+    }
 
-        if (mCurrItemInfo != null && mCurrItemInfo.position != newCurrentItem) {
-            mAdapter.destroyItem(this, mCurrItemInfo.position, mCurrItemInfo.object);
+    /**
+     * Animates from {@code outgoing} to {@code incoming}. Must be called after the adapter's
+     * finishUpdate so that fragment based pages already have their views attached.
+     */
+    private void startPageTransition(@NonNull ItemInfo outgoing, @Nullable ItemInfo incoming) {
+        final View outgoingView = viewForObject(outgoing.object);
+        final View incomingView = incoming != null ? viewForObject(incoming.object) : null;
+        mOutgoingItemInfo = outgoing;
+        if (outgoingView == null || incomingView == null) {
+            // Nothing to animate, destroy the outgoing page right away.
+            endPageTransition();
+            return;
         }
 
-        if ((mCurrItemInfo == null || mCurrItemInfo.position != newCurrentItem) && N > 0) {
-            mCurrItemInfo = addNewItem(newCurrentItem);
-            mAdapter.setPrimaryItem(this, mCurItem, mCurrItemInfo.object);
+        mOutgoingView = outgoingView;
+        mIncomingView = incomingView;
+        mOutgoingLayerType = outgoingView.getLayerType();
+        mIncomingLayerType = incomingView.getLayerType();
+        outgoingView.setLayerType(LAYER_TYPE_HARDWARE, null);
+        incomingView.setLayerType(LAYER_TYPE_HARDWARE, null);
+
+        final ViewPropertyAnimatorCompat outAnim = ViewCompat.animate(outgoingView)
+                .setDuration(mPageTransitionDuration);
+        final ViewPropertyAnimatorCompat inAnim = ViewCompat.animate(incomingView)
+                .setDuration(mPageTransitionDuration);
+        switch (mPageTransition) {
+            case TRANSITION_SLIDE: {
+                boolean forward = incoming.position > outgoing.position;
+                if (ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL) {
+                    forward = !forward;
+                }
+                final int width = getClientWidth();
+                incomingView.setTranslationX(forward ? width : -width);
+                inAnim.translationX(0);
+                outAnim.translationX(forward ? -width : width);
+                break;
+            }
+            case TRANSITION_SCALE:
+                incomingView.setAlpha(0);
+                incomingView.setScaleX(TRANSITION_SCALE_FROM);
+                incomingView.setScaleY(TRANSITION_SCALE_FROM);
+                inAnim.alpha(1).scaleX(1).scaleY(1);
+                outAnim.alpha(0);
+                break;
+            case TRANSITION_CROSSFADE:
+            default:
+                incomingView.setAlpha(0);
+                inAnim.alpha(1);
+                outAnim.alpha(0);
+                break;
         }
+        inAnim.setListener(new ViewPropertyAnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(View view) {
+                endPageTransition();
+            }
+        });
+        outAnim.start();
+        inAnim.start();
+    }
 
-        mAdapter.finishUpdate(this);
+    /**
+     * Ends the running page transition, if any, jumping both pages to their final state,
+     * restoring their layer types and destroying the outgoing page.
+     */
+    void endPageTransition() {
+        final ItemInfo outgoing = mOutgoingItemInfo;
+        if (outgoing == null) {
+            return;
+        }
+        mOutgoingItemInfo = null;
+        cancelPageTransitionAnimations();
 
-        if (hasFocus()) {
-            View currentFocused = findFocus();
-            ItemInfo ii = currentFocused != null ? infoForAnyChild(currentFocused) : null;
-            if (ii == null) {
-                for (int i = 0; i < getChildCount(); i++) {
-                    View child = getChildAt(i);
-                    ii = infoForChild(child);
-                    if (ii != null) {
-                        if (child.requestFocus(View.FOCUS_FORWARD)) {
-                            break;
-                        }
-                    }
-                }
-            }
+        if (mAdapter != null) {
+            mAdapter.startUpdate(this);
+            destroyItemObject(outgoing.position, outgoing.object);
+            mAdapter.finishUpdate(this);
+        }
+    }
+
+    /**
+     * Jumps the pages of a running transition to their final state without destroying the
+     * outgoing page. The destroy happens on the next {@link #endPageTransition()}.
+     */
+    private void cancelPageTransitionAnimations() {
+        final View outgoingView = mOutgoingView;
+        final View incomingView = mIncomingView;
+        mOutgoingView = null;
+        mIncomingView = null;
+        if (outgoingView != null) {
+            resetTransitionProperties(outgoingView, mOutgoingLayerType);
         }
+        if (incomingView != null) {
+            resetTransitionProperties(incomingView, mIncomingLayerType);
+        }
+    }
+
+    private static void resetTransitionProperties(@NonNull View view, int layerType) {
+        final ViewPropertyAnimatorCompat anim = ViewCompat.animate(view);
+        // Drop the listener first so cancelling does not re-enter endPageTransition().
+        anim.setListener(null);
+        anim.cancel();
+        view.setAlpha(1);
+        view.setTranslationX(0);
+        view.setScaleX(1);
+        view.setScaleY(1);
+        view.setLayerType(layerType, null);
     }
 
     /**
@@ -446,6 +2552,11 @@ public class ViewSwitcher extends FrameLayout {
     public static class SavedState extends AbsSavedState {
         int position;
         Parcelable adapterState;
+        /**
+         * The captured page states of a {@link PageStateSaver} adapter, or null. A snapshot that
+         * shares the ViewSwitcher's unchanged segments.
+         */
+        PageStateStore pageStates;
         ClassLoader loader;
 
         public SavedState(@NonNull Parcelable superState) {
@@ -457,6 +2568,11 @@ public class ViewSwitcher extends FrameLayout {
             super.writeToParcel(out, flags);
             out.writeInt(position);
             out.writeParcelable(adapterState, flags);
+            if (pageStates == null) {
+                out.writeInt(-1);
+                return;
+            }
+            pageStates.writeToParcel(out, flags);
         }
 
         @NonNull
@@ -491,6 +2607,10 @@ public class ViewSwitcher extends FrameLayout {
             }
             position = in.readInt();
             adapterState = in.readParcelable(loader);
+            final int count = in.readInt();
+            if (count >= 0) {
+                pageStates = PageStateStore.readFromParcel(in, count, loader);
+            }
             this.loader = loader;
         }
     }
@@ -499,10 +2619,24 @@ public class ViewSwitcher extends FrameLayout {
     public Parcelable onSaveInstanceState() {
         Parcelable superState = super.onSaveInstanceState();
         if (superState != null) {
+            if (mRetainedPageStore != null && mAdapter instanceof PageRetainer
+                    && isChangingConfigurations()) {
+                retainPages();
+            }
             SavedState ss = new SavedState(superState);
             ss.position = mCurItem;
             if (mAdapter != null) {
                 ss.adapterState = mAdapter.saveState();
+                if (mAdapter instanceof PageStateSaver) {
+                    // The hidden pages were captured as they were hidden, only the current page
+                    // may have changed since. Putting it copies only its own segment.
+                    ss.pageStates = mPageStates.snapshot();
+                    if (mCurrItemInfo != null && mBuildingItemInfo == null) {
+                        ss.pageStates.put(getItemId(mCurrItemInfo.position),
+                                ((PageStateSaver) mAdapter).savePageState(
+                                        mCurrItemInfo.position, mCurrItemInfo.object));
+                    }
+                }
             }
             return ss;
         }
@@ -520,11 +2654,15 @@ public class ViewSwitcher extends FrameLayout {
         super.onRestoreInstanceState(ss.getSuperState());
 
         if (mAdapter != null) {
+            if (ss.pageStates != null) {
+                mPageStates = ss.pageStates.snapshot();
+            }
             mAdapter.restoreState(ss.adapterState, ss.loader);
             setCurrentItemInternal(ss.position, true);
         } else {
             mRestoredCurItem = ss.position;
             mRestoredAdapterState = ss.adapterState;
+            mRestoredPageStates = ss.pageStates != null ? ss.pageStates.snapshot() : null;
             mRestoredClassLoader = ss.loader;
         }
     }
@@ -584,36 +2722,241 @@ public class ViewSwitcher extends FrameLayout {
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
-        mFirstLayout = true;
+        if (mReleasePageHandler != null) {
+            mReleasePageHandler.removeCallbacks(mReleasePageRunnable);
+        }
+        if (mDetachPolicy != DETACH_POLICY_KEEP_PAGE || mCurrItemInfo == null) {
+            mFirstLayout = true;
+        }
+        if (mBuildingItemInfo != null || nextPrewarmedItemToBuild() != null) {
+            mPageBuildCallback.post(this);
+        }
+        if (mDataSetChangePending) {
+            mDataSetChangeCallback.post(this);
+        }
+        scheduleWarmUp();
+        postDeferredPageSelected();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mRetainedItemInfo != null) {
+            releaseRetainedPage();
+        }
+        // Don't touch the adapter while detaching, the outgoing page is destroyed by the next
+        // populate instead.
+        cancelPageTransitionAnimations();
+        // Pause any page build, it resumes once we are attached again.
+        mPageBuildCallback.cancel();
+        mDataSetChangeCallback.cancel();
+        cancelWarmUp();
+        cancelDeferredPageSelected();
+        cancelDeferredPopulate();
+        if (mDetachPolicy == DETACH_POLICY_RELEASE_PAGE && mCurrItemInfo != null) {
+            if (mReleasePageHandler == null) {
+                mReleasePageHandler = new Handler(Looper.getMainLooper());
+            }
+            mReleasePageHandler.postDelayed(mReleasePageRunnable, RELEASE_PAGE_DELAY);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility != VISIBLE) {
+            // Typically the app going to the background, capture what the user is leaving.
+            savePageSnapshot();
+        }
     }
 
+    /**
+     * Only the shown pages are measured and laid out, rather than every child as FrameLayout
+     * would: the current page, the outgoing page of a transition and the placeholder. The other
+     * children, such as prewarmed pages, are kept at zero size.
+     */
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        // Populate first, so that a page added for the current item is measured in this pass.
         mInLayout = true;
-        populate();
+        loadPageSnapshot(widthMeasureSpec, heightMeasureSpec);
+        if (shouldDeferInitialPopulate()) {
+            deferInitialPopulate();
+        } else {
+            populate();
+        }
         mInLayout = false;
+
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.EXACTLY
+                && MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.EXACTLY) {
+            // Our size does not depend on the pages, measure them straight at it.
+            setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec),
+                    MeasureSpec.getSize(heightMeasureSpec));
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                final View child = getChildAt(i);
+                if (child.getVisibility() != GONE
+                        && (isShownChild(child) || isWarmChild(child))) {
+                    measurePage(child);
+                }
+            }
+        } else {
+            measureWrappingShownChildren(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    /**
+     * Measures the shown children against our own measure specs and sizes ourselves to wrap
+     * them, following FrameLayout.
+     */
+    private void measureWrappingShownChildren(int widthMeasureSpec, int heightMeasureSpec) {
+        int maxWidth = 0;
+        int maxHeight = 0;
+        int childState = 0;
+        int matchParentCount = 0;
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() == GONE || !isShownChild(child)) {
+                continue;
+            }
+            measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, 0);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            maxWidth = Math.max(maxWidth,
+                    child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin);
+            maxHeight = Math.max(maxHeight,
+                    child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin);
+            childState = combineMeasuredStates(childState, child.getMeasuredState());
+            if (lp.width == LayoutParams.MATCH_PARENT || lp.height == LayoutParams.MATCH_PARENT) {
+                matchParentCount++;
+            }
+        }
+        final Rect padding = getPagePadding();
+        maxWidth = Math.max(maxWidth + padding.left + padding.right, getSuggestedMinimumWidth());
+        maxHeight = Math.max(maxHeight + padding.top + padding.bottom,
+                getSuggestedMinimumHeight());
+        setMeasuredDimension(resolveSizeAndState(maxWidth, widthMeasureSpec, childState),
+                resolveSizeAndState(maxHeight, heightMeasureSpec,
+                        childState << MEASURED_HEIGHT_STATE_SHIFT));
+
+        // A single match parent child already defines our size. Several of them, during a
+        // transition, are brought to the same size like FrameLayout does.
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            final boolean matchParent = lp.width == LayoutParams.MATCH_PARENT
+                    || lp.height == LayoutParams.MATCH_PARENT;
+            if (isShownChild(child)) {
+                if (matchParent && matchParentCount > 1) {
+                    measurePage(child);
+                }
+            } else if (isWarmChild(child)) {
+                // Warm pages don't count towards our size, they follow it.
+                measurePage(child);
+            }
+        }
+    }
+
+    /**
+     * Measures a shown child within our measured size. A page whose specs did not change and
+     * that did not request a layout is not measured again, View#measure skips it.
+     */
+    private void measurePage(View child) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        final Rect padding = getPagePadding();
+        final int childWidthMeasureSpec = getChildMeasureSpec(
+                MeasureSpec.makeMeasureSpec(getMeasuredWidth(), MeasureSpec.EXACTLY),
+                padding.left + padding.right + lp.leftMargin + lp.rightMargin,
+                lp.width);
+        final int childHeightMeasureSpec = getChildMeasureSpec(
+                MeasureSpec.makeMeasureSpec(getMeasuredHeight(), MeasureSpec.EXACTLY),
+                padding.top + padding.bottom + lp.topMargin + lp.bottomMargin,
+                lp.height);
+        child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        super.onLayout(changed, l, t, r, b);
         final int count = getChildCount();
         for (int i = 0; i < count; i++) {
             final View child = getChildAt(i);
-            if (child.getVisibility() != GONE) {
-                if (infoForChild(child) == null) {
-                    child.layout(0, 0, 0, 0);
-                }
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            if (isShownChild(child)) {
+                layoutPage(child, r - l, b - t, false);
+            } else if (isWarmChild(child)) {
+                layoutPage(child, r - l, b - t, true);
+            } else if (child.getWidth() != 0 || child.getHeight() != 0
+                    || child.isLayoutRequested()) {
+                child.layout(0, 0, 0, 0);
             }
         }
         mFirstLayout = false;
     }
 
+    /**
+     * @param offScreen true to lay out the child one width to the right, outside our bounds
+     */
+    private void layoutPage(View child, int width, int height, boolean offScreen) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        int gravity = lp.gravity;
+        if (gravity == -1) {
+            gravity = Gravity.TOP | GravityCompat.START;
+        }
+        gravity = GravityCompat.getAbsoluteGravity(gravity, ViewCompat.getLayoutDirection(this));
+        final Rect padding = getPagePadding();
+        final Rect container = mTempContainerRect;
+        container.left = padding.left + lp.leftMargin;
+        container.top = padding.top + lp.topMargin;
+        container.right = width - padding.right - lp.rightMargin;
+        container.bottom = height - padding.bottom - lp.bottomMargin;
+        final Rect bounds = mTempChildRect;
+        Gravity.apply(gravity, child.getMeasuredWidth(), child.getMeasuredHeight(), container,
+                bounds);
+        final int offset = offScreen ? width : 0;
+        child.layout(bounds.left + offset, bounds.top, bounds.right + offset, bounds.bottom);
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        // Warm pages are outside our bounds, but children may not be clipped.
+        if (!mPrewarmedItems.isEmpty() && isWarmChild(child)) {
+            return false;
+        }
+        final boolean more = super.drawChild(canvas, child, drawingTime);
+        if (child == mSnapshotReplacement) {
+            // Not while drawing, the snapshot goes in the next frame.
+            mSnapshotReplacement = null;
+            post(mRemoveSnapshotRunnable);
+        }
+        return more;
+    }
+
+    private boolean isShownChild(View child) {
+        return child == mOutgoingView || child == mPagePlaceholder || child == mSnapshotPlaceholder
+                || infoForChild(child) != null;
+    }
+
     private void dispatchOnPageSelected(int position) {
-        if (mOnPageChangeListeners != null) {
-            for (int i = 0, z = mOnPageChangeListeners.size(); i < z; i++) {
-                OnPageChangeListener listener = mOnPageChangeListeners.get(i);
+        dispatchOnPageSelected(mOnPageChangeListeners, position);
+        if (mAfterFramePageChangeListeners != null && !mAfterFramePageChangeListeners.isEmpty()) {
+            mAfterFramePageSelected = position;
+            postDeferredPageSelected();
+        }
+        if (mIdlePageChangeListeners != null && !mIdlePageChangeListeners.isEmpty()) {
+            mIdlePageSelected = position;
+            postDeferredPageSelected();
+        }
+    }
+
+    private static void dispatchOnPageSelected(List<OnPageChangeListener> listeners,
+                                               int position) {
+        if (listeners != null) {
+            for (int i = 0, z = listeners.size(); i < z; i++) {
+                OnPageChangeListener listener = listeners.get(i);
                 if (listener != null) {
                     listener.onPageSelected(position);
                 }
@@ -621,6 +2964,32 @@ public class ViewSwitcher extends FrameLayout {
         }
     }
 
+    /**
+     * Schedules the pending deferred dispatches, once attached. Already scheduled ones will pick
+     * up the latest position when they run.
+     */
+    private void postDeferredPageSelected() {
+        if (getWindowToken() == null) {
+            return;
+        }
+        if (mAfterFramePageSelected >= 0) {
+            mAfterFramePageSelectedCallback.post(this);
+        }
+        if (mIdlePageSelected >= 0 && !mIdlePageSelectedScheduled) {
+            mIdlePageSelectedScheduled = true;
+            Looper.myQueue().addIdleHandler(mIdlePageSelectedHandler);
+        }
+    }
+
+    private void cancelDeferredPageSelected() {
+        mAfterFramePageSelectedCallback.cancel();
+        removeCallbacks(mAfterFramePageSelectedRunnable);
+        if (mIdlePageSelectedScheduled) {
+            mIdlePageSelectedScheduled = false;
+            Looper.myQueue().removeIdleHandler(mIdlePageSelectedHandler);
+        }
+    }
+
     /**
      * We only want the current page that is being shown to be focusable.
      */
@@ -730,18 +3099,247 @@ public class ViewSwitcher extends FrameLayout {
         return false;
     }
 
+    /**
+     * Records how long the switch that just completed took, from the populate that started it
+     * until its page was in place, including any incremental build.
+     */
+    private void recordSwitchTime(int position) {
+        if (mSwitchStartNanos < 0) {
+            return;
+        }
+        final int index = mSwitchCount % RECENT_SWITCH_COUNT;
+        mRecentSwitchNanos[index] = System.nanoTime() - mSwitchStartNanos;
+        mRecentSwitchPositions[index] = position;
+        mSwitchCount++;
+        mSwitchStartNanos = -1;
+    }
+
+    // Sizes of the bookkeeping that dump() reports, checked by tests for growth.
+
+    int getPageChangeListenerCount() {
+        return (mOnPageChangeListeners != null ? mOnPageChangeListeners.size() : 0)
+                + (mAfterFramePageChangeListeners != null
+                        ? mAfterFramePageChangeListeners.size() : 0)
+                + (mIdlePageChangeListeners != null ? mIdlePageChangeListeners.size() : 0);
+    }
+
+    int getDataSetChangeListenerCount() {
+        return mDataSetChangeListeners != null ? mDataSetChangeListeners.size() : 0;
+    }
+
+    int getPageFocusCount() {
+        return mPageFocus.size();
+    }
+
+    int getPageStateCount() {
+        return mPageStates.size();
+    }
+
+    int getPageScopeCount() {
+        return mPageScopes.size();
+    }
+
+    /**
+     * Print the internal state of this ViewSwitcher, for example from
+     * {@link Activity#dump(String, java.io.FileDescriptor, PrintWriter, String[])} so that it
+     * shows up in {@code adb shell dumpsys activity}.
+     *
+     * @param writer The writer to print to
+     */
+    public void dump(@NonNull PrintWriter writer) {
+        dump("", writer);
+    }
+
+    /**
+     * Like {@link #dump(PrintWriter)}, with every line starting with the given prefix.
+     */
+    public void dump(@NonNull String prefix, @NonNull PrintWriter writer) {
+        final String inner = prefix + "  ";
+        writer.print(prefix);
+        writer.print("ViewSwitcher{");
+        writer.print(Integer.toHexString(System.identityHashCode(this)));
+        writer.print(" id=0x");
+        writer.print(Integer.toHexString(getId()));
+        writer.print(" ");
+        writer.print(getWidth());
+        writer.print("x");
+        writer.print(getHeight());
+        writer.println(getWindowToken() != null ? " attached}" : " detached}");
+
+        writer.print(inner);
+        writer.print("adapter=");
+        writer.println(mAdapter != null ? mAdapter.getClass().getName() : "null");
+        writer.print(inner);
+        writer.print("mCurItem=");
+        writer.print(mCurItem);
+        writer.print(" mCurrItemInfo=");
+        writer.println(describeItemInfo(mCurrItemInfo));
+        writer.print(inner);
+        writer.print("mExpectedAdapterCount=");
+        writer.print(mExpectedAdapterCount);
+        writer.print(" actual=");
+        writer.println(mAdapter != null ? String.valueOf(mAdapter.getCount()) : "-");
+        writer.print(inner);
+        writer.print("mFirstLayout=");
+        writer.print(mFirstLayout);
+        writer.print(" mPopulatePending=");
+        writer.print(mPopulatePending);
+        writer.print(" mRestoredCurItem=");
+        writer.print(mRestoredCurItem);
+        writer.print(" mDataSetChangePending=");
+        writer.print(mDataSetChangePending);
+        writer.print(" mInitialPageReadyPending=");
+        writer.print(mInitialPageReadyPending);
+        writer.print(" mDeferredPopulatePosted=");
+        writer.print(mDeferredPopulatePosted);
+        writer.print(" snapshot=");
+        writer.println(mSnapshotPlaceholder != null ? "shown"
+                : mPageSnapshotCache != null ? "enabled" : "none");
+        writer.print(inner);
+        writer.print("listeners: pageChange=");
+        writer.print(mOnPageChangeListeners != null ? mOnPageChangeListeners.size() : 0);
+        writer.print("+");
+        writer.print(mAfterFramePageChangeListeners != null
+                ? mAfterFramePageChangeListeners.size() : 0);
+        writer.print(" after frame+");
+        writer.print(mIdlePageChangeListeners != null ? mIdlePageChangeListeners.size() : 0);
+        writer.print(" idle");
+        writer.print(" adapterChange=");
+        writer.print(mAdapterChangeListeners != null ? mAdapterChangeListeners.size() : 0);
+        writer.print(" dataSetChange=");
+        writer.println(mDataSetChangeListeners != null ? mDataSetChangeListeners.size() : 0);
+
+        writer.print(inner);
+        writer.print("instantiated=");
+        writer.print(mInstantiateCount);
+        writer.print(" destroyed=");
+        writer.print(mDestroyCount);
+        writer.print(" switches=");
+        writer.println(mSwitchCount);
+        final int recent = Math.min(mSwitchCount, RECENT_SWITCH_COUNT);
+        if (recent > 0) {
+            writer.print(inner);
+            writer.print("recent switches (newest first):");
+            for (int i = 1; i <= recent; i++) {
+                final int index = (mSwitchCount - i) % RECENT_SWITCH_COUNT;
+                writer.print(" #");
+                writer.print(mRecentSwitchPositions[index]);
+                writer.print("=");
+                writer.print(mRecentSwitchNanos[index] / 1000);
+                writer.print("us");
+            }
+            writer.println();
+        }
+
+        dumpPage(inner, writer, "building", mBuildingItemInfo);
+        dumpPage(inner, writer, "outgoing", mOutgoingItemInfo);
+        for (int i = 0, z = mPrewarmedItems.size(); i < z; i++) {
+            dumpPage(inner, writer, "prewarmed", mPrewarmedItems.get(i));
+        }
+        if (mRetainedPageStore != null) {
+            writer.print(inner);
+            writer.print("retainedPageStore: pages=");
+            writer.println(mRetainedPageStore.size());
+        }
+        if (mReleasedPageState != null) {
+            writer.print(inner);
+            writer.print("releasedPageState: id=");
+            writer.print(mReleasedPageId);
+            writer.print(" views=");
+            writer.println(mReleasedPageState.size());
+        }
+        if (mAdapter instanceof PageStateSaver) {
+            writer.print(inner);
+            writer.print("pageStates: captured=");
+            writer.println(mPageStates.size());
+        }
+        mPreloadCache.dump(inner, writer);
+        writer.print(inner);
+        writer.print("focusMemory: pages=");
+        writer.print(mPageFocus.size());
+        writer.print(" pageScopes=");
+        writer.println(mPageScopes.size());
+    }
+
+    private void dumpPage(String prefix, PrintWriter writer, String label, ItemInfo ii) {
+        if (ii == null) {
+            return;
+        }
+        writer.print(prefix);
+        writer.print(label);
+        writer.print(": ");
+        writer.print(describeItemInfo(ii));
+        final View view = viewForObject(ii.object);
+        if (view != null) {
+            // One ARGB_8888 frame of the page, the size of its layer or snapshot.
+            writer.print(" views=");
+            writer.print(countViews(view));
+            writer.print(" ~");
+            writer.print((long) view.getWidth() * view.getHeight() * 4 / 1024);
+            writer.print("KiB");
+        }
+        writer.println();
+    }
+
+    private String describeItemInfo(ItemInfo ii) {
+        if (ii == null) {
+            return "null";
+        }
+        return "{position=" + ii.position + " id=" + getItemId(ii.position) + " object="
+                + (ii.object != null ? PageLeakTracker.describe(ii.object) : "null")
+                + (ii.builder != null ? " building" : "")
+                + (ii.warmedUp ? " warm" : "") + "}";
+    }
+
+    private static int countViews(View view) {
+        int count = 1;
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0, z = group.getChildCount(); i < z; i++) {
+                count += countViews(group.getChildAt(i));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The view last focused in a page. The reference goes straight to it while the page's view
+     * lives on, the id finds it again in a recreated page.
+     */
+    private static class PageFocus {
+        WeakReference<View> view;
+        int id;
+    }
+
     private class PagerObserver extends DataSetObserver {
         PagerObserver() {
         }
 
         @Override
         public void onChanged() {
-            dataSetChanged();
+            onAdapterDataSetChanged();
         }
 
         @Override
         public void onInvalidated() {
-            dataSetChanged();
+            onAdapterDataSetChanged();
+        }
+    }
+
+    @RequiresApi(29)
+    private static class Api29Impl {
+        static void warmUpDisplayList(View page) {
+            // Drawing into a hardware canvas records the display list of every child view, they
+            // are reused once the page is drawn for real. Only the page's own one is discarded.
+            final RenderNode node = new RenderNode("ViewSwitcher warm-up");
+            node.setPosition(0, 0, page.getWidth(), page.getHeight());
+            final RecordingCanvas canvas = node.beginRecording(page.getWidth(), page.getHeight());
+            try {
+                page.draw(canvas);
+            } finally {
+                node.endRecording();
+                node.discardDisplayList();
+            }
         }
     }
 }
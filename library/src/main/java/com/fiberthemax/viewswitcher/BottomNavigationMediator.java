@@ -0,0 +1,282 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fiberthemax.viewswitcher;
+
+import android.util.SparseIntArray;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.IdRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.viewpager.widget.PagerAdapter;
+import androidx.viewpager.widget.ViewSwitcher;
+
+import com.google.android.material.bottomnavigation.BottomNavigationView;
+
+/**
+ * A mediator to link a BottomNavigationView with a ViewSwitcher. The mediator will select the
+ * ViewSwitcher's page when a navigation item is selected, and the navigation item when the
+ * ViewSwitcher's current item changes.
+ *
+ * <p>Menu items map to adapter positions either in menu order, or through the item ids passed to
+ * the constructor. The mapping is computed once in {@link #attach()}, so each selection is a
+ * table lookup. When a navigation item is pressed, before it is selected on release, the mediator
+ * calls {@link ViewSwitcher#prewarmItem(int)} so that the target page is already being built by
+ * the time it is shown. The same happens when an item gains focus from a D-pad or keyboard. For
+ * this the mediator sets the item views' OnTouchListener, so set touch listeners of your own
+ * through {@link #setOnItemTouchListener(View.OnTouchListener)}. Their focus listeners are
+ * chained.</p>
+ *
+ * <p>Establish the link by creating an instance of this class, make sure the ViewSwitcher has an
+ * adapter and then call {@link #attach()} on it. The mediator takes over the BottomNavigationView's
+ * {@link BottomNavigationView.OnNavigationItemSelectedListener}. Changing the menu or the
+ * ViewSwitcher's adapter will require a {@link #detach()} followed by {@link #attach()} call.</p>
+ */
+public final class BottomNavigationMediator {
+    @NonNull
+    private final BottomNavigationView bottomNavigationView;
+    @NonNull
+    private final ViewSwitcher viewSwitcher;
+    @Nullable
+    private final int[] itemIds;
+    @NonNull
+    private int[] positionToItemId = new int[0];
+    @NonNull
+    private final SparseIntArray itemIdToPosition = new SparseIntArray();
+    private boolean prewarmOnPress = true;
+    private boolean attached;
+    @Nullable
+    private View.OnTouchListener onItemTouchListener;
+
+    @Nullable
+    private ViewSwitcher.OnPageChangeListener onPageChangeListener;
+
+    public BottomNavigationMediator(
+            @NonNull BottomNavigationView bottomNavigationView,
+            @NonNull ViewSwitcher viewSwitcher) {
+        this(bottomNavigationView, viewSwitcher, null);
+    }
+
+    /**
+     * @param itemIds The menu item id for each adapter position, or null to map menu items to
+     *                positions in menu order.
+     */
+    public BottomNavigationMediator(
+            @NonNull BottomNavigationView bottomNavigationView,
+            @NonNull ViewSwitcher viewSwitcher,
+            @Nullable @IdRes int[] itemIds) {
+        this.bottomNavigationView = bottomNavigationView;
+        this.viewSwitcher = viewSwitcher;
+        this.itemIds = itemIds != null ? itemIds.clone() : null;
+    }
+
+    /**
+     * Set whether pressing a navigation item starts building its page before it is selected.
+     * Enabled by default.
+     */
+    public void setPrewarmOnPress(boolean prewarmOnPress) {
+        this.prewarmOnPress = prewarmOnPress;
+    }
+
+    /**
+     * Set a touch listener for the navigation items' views, in place of setting one on them
+     * directly which would replace the mediator's own. It is called first, an event it consumes
+     * is not seen by the mediator.
+     *
+     * @param listener The listener, or null to remove it
+     */
+    public void setOnItemTouchListener(@Nullable View.OnTouchListener listener) {
+        onItemTouchListener = listener;
+    }
+
+    /**
+     * Link the BottomNavigationView and the ViewSwitcher together. Must be called after
+     * ViewSwitcher has an adapter set and the menu has been inflated.
+     *
+     * @throws IllegalStateException If the mediator is already attached, or the ViewSwitcher has no
+     *                               adapter.
+     */
+    public void attach() {
+        if (attached) {
+            throw new IllegalStateException("BottomNavigationMediator is already attached");
+        }
+        final PagerAdapter adapter = viewSwitcher.getAdapter();
+        if (adapter == null) {
+            throw new IllegalStateException(
+                    "BottomNavigationMediator attached before ViewSwitcher has an adapter");
+        }
+        attached = true;
+
+        buildItemTable();
+
+        onPageChangeListener = new BottomNavigationOnPageChangeListener();
+        viewSwitcher.addOnPageChangeListener(onPageChangeListener);
+
+        bottomNavigationView.setOnNavigationItemSelectedListener(
+                new BottomNavigationView.OnNavigationItemSelectedListener() {
+                    @Override
+                    public boolean onNavigationItemSelected(@NonNull MenuItem item) {
+                        final int position = getPositionForItemId(item.getItemId());
+                        final PagerAdapter adapter = viewSwitcher.getAdapter();
+                        if (position < 0 || adapter == null || position >= adapter.getCount()) {
+                            return false;
+                        }
+                        viewSwitcher.setCurrentItem(position);
+                        return true;
+                    }
+                });
+
+        // Item views carry their menu item's id, so we can find them to watch for presses.
+        for (int position = 0; position < positionToItemId.length; position++) {
+            final View itemView = bottomNavigationView.findViewById(positionToItemId[position]);
+            if (itemView != null) {
+                final PrewarmOnPressListener listener = new PrewarmOnPressListener(position,
+                        itemView.getOnFocusChangeListener());
+                itemView.setOnTouchListener(listener);
+                itemView.setOnFocusChangeListener(listener);
+            }
+        }
+
+        // Now update the selected item to match the ViewSwitcher's current item
+        final int itemId = getItemIdForPosition(viewSwitcher.getCurrentItem());
+        if (itemId != View.NO_ID && bottomNavigationView.getSelectedItemId() != itemId) {
+            bottomNavigationView.setSelectedItemId(itemId);
+        }
+    }
+
+    /**
+     * Unlink the BottomNavigationView and the ViewSwitcher. To be called on a stale
+     * BottomNavigationMediator if a new one is instantiated, to prevent holding on to a view that
+     * should be garbage collected.
+     */
+    public void detach() {
+        // Hand the item views' listeners back to the app.
+        for (int itemId : positionToItemId) {
+            final View itemView = bottomNavigationView.findViewById(itemId);
+            final View.OnFocusChangeListener focusListener =
+                    itemView != null ? itemView.getOnFocusChangeListener() : null;
+            if (focusListener instanceof PrewarmOnPressListener) {
+                itemView.setOnFocusChangeListener(
+                        ((PrewarmOnPressListener) focusListener).chainedFocusListener);
+                itemView.setOnTouchListener(onItemTouchListener);
+            }
+        }
+        bottomNavigationView.setOnNavigationItemSelectedListener(null);
+        viewSwitcher.removeOnPageChangeListener(onPageChangeListener);
+        onPageChangeListener = null;
+        positionToItemId = new int[0];
+        itemIdToPosition.clear();
+        attached = false;
+    }
+
+    /**
+     * Returns the adapter position mapped to the given menu item id, or -1 if there is none.
+     */
+    public int getPositionForItemId(@IdRes int itemId) {
+        return itemIdToPosition.get(itemId, -1);
+    }
+
+    /**
+     * Returns the menu item id mapped to the given adapter position, or {@link View#NO_ID} if there
+     * is none.
+     */
+    @IdRes
+    public int getItemIdForPosition(int position) {
+        return position >= 0 && position < positionToItemId.length
+                ? positionToItemId[position] : View.NO_ID;
+    }
+
+    private void buildItemTable() {
+        if (itemIds != null) {
+            positionToItemId = itemIds.clone();
+        } else {
+            final Menu menu = bottomNavigationView.getMenu();
+            positionToItemId = new int[menu.size()];
+            for (int i = 0; i < positionToItemId.length; i++) {
+                positionToItemId[i] = menu.getItem(i).getItemId();
+            }
+        }
+        itemIdToPosition.clear();
+        for (int position = 0; position < positionToItemId.length; position++) {
+            itemIdToPosition.put(positionToItemId[position], position);
+        }
+    }
+
+    private class BottomNavigationOnPageChangeListener
+            implements ViewSwitcher.OnPageChangeListener {
+        BottomNavigationOnPageChangeListener() {
+        }
+
+        @Override
+        public void onPageSelected(int position) {
+            final int itemId = getItemIdForPosition(position);
+            if (itemId != View.NO_ID && bottomNavigationView.getSelectedItemId() != itemId) {
+                bottomNavigationView.setSelectedItemId(itemId);
+            }
+        }
+    }
+
+    /**
+     * Starts building the item's page as soon as it is pressed or gains focus. Never consumes
+     * events, so the item still gets its click.
+     */
+    private class PrewarmOnPressListener
+            implements View.OnTouchListener, View.OnFocusChangeListener {
+        private final int position;
+        /**
+         * The focus listener the item view had before, called first.
+         */
+        @Nullable
+        final View.OnFocusChangeListener chainedFocusListener;
+
+        PrewarmOnPressListener(int position,
+                               @Nullable View.OnFocusChangeListener chainedFocusListener) {
+            this.position = position;
+            this.chainedFocusListener = chainedFocusListener;
+        }
+
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (onItemTouchListener != null && onItemTouchListener.onTouch(v, event)) {
+                return true;
+            }
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                prewarm();
+            }
+            return false;
+        }
+
+        @Override
+        public void onFocusChange(View v, boolean hasFocus) {
+            if (chainedFocusListener != null) {
+                chainedFocusListener.onFocusChange(v, hasFocus);
+            }
+            if (hasFocus) {
+                prewarm();
+            }
+        }
+
+        private void prewarm() {
+            if (prewarmOnPress && position != viewSwitcher.getCurrentItem()) {
+                viewSwitcher.prewarmItem(position);
+            }
+        }
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fiberthemax.viewswitcher;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.util.AtomicFile;
+import androidx.viewpager.widget.PagerAdapter;
+import androidx.viewpager.widget.ViewSwitcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Learns which page users tend to switch to from each page of a ViewSwitcher and predicts the
+ * most likely next pages, so that they can be built ahead of time.
+ *
+ * <p>Transitions are counted in a fixed size frequency matrix keyed by the items' stable ids (see
+ * {@link ViewSwitcher.StableIdProvider}), backed by primitive arrays so that recording a switch
+ * costs a short array scan and no allocation. When more ids are seen than the predictor has room
+ * for, the least visited one is forgotten. Counts are halved periodically so that old habits fade
+ * out.</p>
+ *
+ * <p>Call {@link #load()} once at startup and {@link #save()} when the app goes to the
+ * background, both from a background thread, to keep the learned usage across launches. Call
+ * {@link #attach(ViewSwitcher, OnPredictionListener)} to record switches and be told after each of
+ * them which pages are likely to be next.</p>
+ */
+public final class PageUsagePredictor {
+    private static final String TAG = "PageUsagePredictor";
+
+    private static final int FILE_MAGIC = 0x50555031;
+    private static final int DEFAULT_CAPACITY = 32;
+    private static final int DEFAULT_MAX_PREDICTIONS = 2;
+
+    /**
+     * All counts are halved as soon as one of them reaches this value.
+     */
+    private static final int MAX_COUNT = 1 << 14;
+
+    @NonNull
+    private final AtomicFile file;
+    private final int capacity;
+    @NonNull
+    private final long[] ids;
+    /**
+     * Number of recorded transitions into each id, used to pick which id to forget.
+     */
+    @NonNull
+    private final int[] totals;
+    /**
+     * A capacity x capacity matrix, row is the index of the page switched from, column the index
+     * of the page switched to.
+     */
+    @NonNull
+    private final int[] counts;
+    @NonNull
+    private final int[] scratchCounts;
+    private int size;
+    private boolean dirty;
+
+    @Nullable
+    private ViewSwitcher viewSwitcher;
+    @Nullable
+    private OnPredictionListener onPredictionListener;
+    @Nullable
+    private ViewSwitcher.OnPageChangeListener onPageChangeListener;
+    private long lastId;
+    @NonNull
+    private long[] predictedIds = new long[DEFAULT_MAX_PREDICTIONS];
+    @NonNull
+    private int[] predictedPositions = new int[DEFAULT_MAX_PREDICTIONS];
+
+    /**
+     * A callback interface to be told which pages are likely to be selected next, for example to
+     * pass them to {@link ViewSwitcher#preloadData(int, int)} with
+     * {@link androidx.viewpager.widget.PageWorkScheduler#PRIORITY_SPECULATIVE}.
+     */
+    public interface OnPredictionListener {
+        /**
+         * Called after the predictor is attached and after every page switch.
+         *
+         * @param viewSwitcher The ViewSwitcher the prediction is for.
+         * @param positions    The predicted positions, most likely first. Only valid until this
+         *                     method returns.
+         * @param count        The number of valid entries in positions, may be 0.
+         */
+        void onPrediction(@NonNull ViewSwitcher viewSwitcher, @NonNull int[] positions, int count);
+    }
+
+    public PageUsagePredictor(@NonNull File file) {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param file     The file the learned usage is persisted to.
+     * @param capacity The maximum number of distinct pages to remember.
+     */
+    public PageUsagePredictor(@NonNull File file, int capacity) {
+        if (capacity <= 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 1: " + capacity);
+        }
+        this.file = new AtomicFile(file);
+        this.capacity = capacity;
+        ids = new long[capacity];
+        totals = new int[capacity];
+        counts = new int[capacity * capacity];
+        scratchCounts = new int[capacity];
+    }
+
+    /**
+     * Set the maximum number of positions handed to the {@link OnPredictionListener}.
+     */
+    public void setMaxPredictions(int maxPredictions) {
+        if (maxPredictions < 0) {
+            throw new IllegalArgumentException("maxPredictions must be non-negative");
+        }
+        predictedIds = new long[maxPredictions];
+        predictedPositions = new int[maxPredictions];
+    }
+
+    /**
+     * Start recording the switches of the given ViewSwitcher. The listener is called right away
+     * with the prediction for the current page, and again after every switch.
+     *
+     * @throws IllegalStateException If the predictor is already attached.
+     */
+    public void attach(@NonNull ViewSwitcher viewSwitcher,
+                       @Nullable OnPredictionListener onPredictionListener) {
+        if (this.viewSwitcher != null) {
+            throw new IllegalStateException("PageUsagePredictor is already attached");
+        }
+        this.viewSwitcher = viewSwitcher;
+        this.onPredictionListener = onPredictionListener;
+        onPageChangeListener = new ViewSwitcher.OnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                onSwitch(position);
+            }
+        };
+        viewSwitcher.addOnPageChangeListener(onPageChangeListener);
+
+        final PagerAdapter adapter = viewSwitcher.getAdapter();
+        if (adapter != null && adapter.getCount() > 0) {
+            lastId = viewSwitcher.getItemId(viewSwitcher.getCurrentItem());
+            dispatchPrediction();
+        } else {
+            lastId = ViewSwitcher.NO_ID;
+        }
+    }
+
+    /**
+     * Stop recording the switches of the attached ViewSwitcher.
+     */
+    public void detach() {
+        if (viewSwitcher != null) {
+            viewSwitcher.removeOnPageChangeListener(onPageChangeListener);
+        }
+        viewSwitcher = null;
+        onPredictionListener = null;
+        onPageChangeListener = null;
+    }
+
+    void onSwitch(int position) {
+        final ViewSwitcher viewSwitcher = this.viewSwitcher;
+        if (viewSwitcher == null) {
+            return;
+        }
+        final long id = viewSwitcher.getItemId(position);
+        if (lastId != ViewSwitcher.NO_ID) {
+            recordTransition(lastId, id);
+        }
+        lastId = id;
+        dispatchPrediction();
+    }
+
+    private void dispatchPrediction() {
+        final ViewSwitcher viewSwitcher = this.viewSwitcher;
+        if (viewSwitcher == null || onPredictionListener == null) {
+            return;
+        }
+        final int count = predictPositions(viewSwitcher, viewSwitcher.getCurrentItem(),
+                predictedPositions);
+        onPredictionListener.onPrediction(viewSwitcher, predictedPositions, count);
+    }
+
+    /**
+     * Record a switch from one page to another.
+     *
+     * @param fromId Stable id of the page switched from
+     * @param toId   Stable id of the page switched to
+     */
+    public synchronized void recordTransition(long fromId, long toId) {
+        if (fromId == toId) {
+            return;
+        }
+        final int from = indexForRecord(fromId, -1);
+        final int to = indexForRecord(toId, from);
+        final int cell = from * capacity + to;
+        counts[cell]++;
+        totals[to]++;
+        if (counts[cell] >= MAX_COUNT || totals[to] >= MAX_COUNT) {
+            age();
+        }
+        dirty = true;
+    }
+
+    /**
+     * Predict the pages most likely to be switched to from the given page.
+     *
+     * @param fromId Stable id of the current page
+     * @param outIds Receives the predicted ids, most likely first
+     * @return The number of ids written to outIds
+     */
+    public synchronized int predict(long fromId, @NonNull long[] outIds) {
+        final int from = indexOf(fromId);
+        if (from < 0) {
+            return 0;
+        }
+        final int[] outCounts = scratchCounts;
+        final int max = Math.min(outIds.length, size);
+        if (max == 0) {
+            return 0;
+        }
+        int found = 0;
+        final int row = from * capacity;
+        for (int col = 0; col < size; col++) {
+            final int count = counts[row + col];
+            if (count == 0 || (found == max && count <= outCounts[found - 1])) {
+                continue;
+            }
+            // Insertion into the short sorted list of best candidates.
+            int i = found < max ? found++ : found - 1;
+            while (i > 0 && outCounts[i - 1] < count) {
+                outCounts[i] = outCounts[i - 1];
+                outIds[i] = outIds[i - 1];
+                i--;
+            }
+            outCounts[i] = count;
+            outIds[i] = ids[col];
+        }
+        return found;
+    }
+
+    /**
+     * Predict the positions of the pages most likely to be switched to from the given position
+     * of the ViewSwitcher's current adapter. Predicted ids no longer in the adapter are skipped.
+     *
+     * @param viewSwitcher The ViewSwitcher whose adapter positions to map to
+     * @param fromPosition Position of the current page
+     * @param outPositions Receives the predicted positions, most likely first
+     * @return The number of positions written to outPositions
+     */
+    public int predictPositions(@NonNull ViewSwitcher viewSwitcher, int fromPosition,
+                                @NonNull int[] outPositions) {
+        final PagerAdapter adapter = viewSwitcher.getAdapter();
+        if (adapter == null) {
+            return 0;
+        }
+        if (predictedIds.length < outPositions.length) {
+            predictedIds = new long[outPositions.length];
+        }
+        final int adapterCount = adapter.getCount();
+        final int found = predict(viewSwitcher.getItemId(fromPosition), predictedIds);
+        int count = 0;
+        for (int i = 0; i < found && count < outPositions.length; i++) {
+            final int position = positionOf(viewSwitcher, adapter, adapterCount, predictedIds[i]);
+            if (position >= 0) {
+                outPositions[count++] = position;
+            }
+        }
+        return count;
+    }
+
+    private static int positionOf(ViewSwitcher viewSwitcher, PagerAdapter adapter,
+                                  int adapterCount, long id) {
+        if (!(adapter instanceof ViewSwitcher.StableIdProvider)) {
+            return id >= 0 && id < adapterCount ? (int) id : -1;
+        }
+        for (int position = 0; position < adapterCount; position++) {
+            if (viewSwitcher.getItemId(position) == id) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(long id) {
+        final long[] ids = this.ids;
+        for (int i = 0, size = this.size; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the given id, adding it if needed and forgetting the least visited id
+     * other than {@code keep} if the matrix is full.
+     */
+    private int indexForRecord(long id, int keep) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            return index;
+        }
+        if (size < capacity) {
+            index = size++;
+        } else {
+            index = keep == 0 ? 1 : 0;
+            for (int i = 0; i < size; i++) {
+                if (i != keep && totals[i] < totals[index]) {
+                    index = i;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                counts[index * capacity + i] = 0;
+                counts[i * capacity + index] = 0;
+            }
+        }
+        ids[index] = id;
+        totals[index] = 0;
+        return index;
+    }
+
+    private void age() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] >>= 1;
+        }
+        for (int i = 0; i < size; i++) {
+            totals[i] >>= 1;
+        }
+    }
+
+    /**
+     * Read previously saved usage, replacing anything recorded so far. A missing or unreadable
+     * file leaves the predictor empty.
+     */
+    @WorkerThread
+    public void load() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Bad file header");
+            }
+            final int savedSize = in.readInt();
+            if (savedSize < 0 || savedSize > capacity) {
+                throw new IOException("Bad size " + savedSize);
+            }
+            final long[] savedIds = new long[savedSize];
+            final int[] savedTotals = new int[savedSize];
+            final int[] savedCounts = new int[savedSize * savedSize];
+            for (int i = 0; i < savedSize; i++) {
+                savedIds[i] = in.readLong();
+                savedTotals[i] = in.readInt();
+            }
+            for (int i = 0; i < savedCounts.length; i++) {
+                savedCounts[i] = in.readInt();
+            }
+            synchronized (this) {
+                size = savedSize;
+                Arrays.fill(counts, 0);
+                System.arraycopy(savedIds, 0, ids, 0, savedSize);
+                System.arraycopy(savedTotals, 0, totals, 0, savedSize);
+                for (int row = 0; row < savedSize; row++) {
+                    System.arraycopy(savedCounts, row * savedSize, counts, row * capacity,
+                            savedSize);
+                }
+                dirty = false;
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing saved yet.
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable usage file " + file.getBaseFile(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the recorded usage to the file, if anything changed since the last load or save.
+     */
+    @WorkerThread
+    public void save() {
+        final int savedSize;
+        final long[] savedIds;
+        final int[] savedTotals;
+        final int[] savedCounts;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            savedSize = size;
+            savedIds = new long[savedSize];
+            savedTotals = new int[savedSize];
+            savedCounts = new int[savedSize * savedSize];
+            System.arraycopy(ids, 0, savedIds, 0, savedSize);
+            System.arraycopy(totals, 0, savedTotals, 0, savedSize);
+            for (int row = 0; row < savedSize; row++) {
+                System.arraycopy(counts, row * capacity, savedCounts, row * savedSize,
+                        savedSize);
+            }
+            dirty = false;
+        }
+
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(savedSize);
+            for (int i = 0; i < savedSize; i++) {
+                out.writeLong(savedIds[i]);
+                out.writeInt(savedTotals[i]);
+            }
+            for (int count : savedCounts) {
+                out.writeInt(count);
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write usage file " + file.getBaseFile(), e);
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+}
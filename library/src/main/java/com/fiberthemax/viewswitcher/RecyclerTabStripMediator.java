@@ -0,0 +1,421 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fiberthemax.viewswitcher;
+
+import android.text.TextUtils;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.viewpager.widget.PagerAdapter;
+import androidx.viewpager.widget.ViewSwitcher;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+/**
+ * A mediator to link a RecyclerView based tab strip with a ViewSwitcher, for adapters with too
+ * many pages for a {@link com.google.android.material.tabs.TabLayout}. Unlike {@link
+ * TabLayoutMediator}, which creates and configures a tab for every page up front, only the tabs
+ * of visible positions are created and bound, and their views are recycled while the strip
+ * scrolls. Selecting a page only rebinds the previously and newly selected tabs.
+ *
+ * <p>Establish the link by creating an instance of this class, make sure the ViewSwitcher has an
+ * adapter and then call {@link #attach()} on it. If the RecyclerView has no layout manager a
+ * horizontal {@link LinearLayoutManager} is set. Supply a {@link TabViewStrategy} to create and
+ * bind custom tab views, by default a TextView showing the adapter's page title is used. Changing
+ * ViewSwitcher's adapter will require a {@link #detach()} followed by {@link #attach()} call.
+ *
+ * <p>The data of a tab's page is preloaded, see {@link ViewSwitcher#preloadData(int)}, as soon as
+ * the tab is pressed or gains focus from a D-pad or keyboard, ahead of it being selected. Presses
+ * are seen through an {@link RecyclerView.OnItemTouchListener} and focus listeners set by the
+ * {@link TabViewStrategy} are chained, so tab views keep the listeners they are given.
+ */
+public final class RecyclerTabStripMediator {
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    @NonNull
+    private final RecyclerView recyclerView;
+    @NonNull
+    private final ViewSwitcher viewSwitcher;
+    private final boolean autoRefresh;
+    @NonNull
+    private final TabViewStrategy tabViewStrategy;
+    @Nullable
+    private PagerAdapter adapter;
+    @Nullable
+    private TabStripAdapter tabStripAdapter;
+    private boolean attached;
+
+    @Nullable
+    private ViewSwitcher.OnPageChangeListener onPageChangeListener;
+    @Nullable
+    private ViewSwitcher.OnDataSetChangeListener onDataSetChangeListener;
+    @Nullable
+    private RecyclerView.OnItemTouchListener onItemTouchListener;
+
+    /**
+     * A callback interface that must be implemented to create and bind tab views.
+     */
+    public interface TabViewStrategy {
+        /**
+         * Called to create a tab view. The view is recycled for other positions afterwards.
+         *
+         * @param parent The strip the view will be added to.
+         * @return A new tab view.
+         */
+        @NonNull
+        View onCreateTabView(@NonNull ViewGroup parent);
+
+        /**
+         * Called to show the page at the given position in a tab view, either because the view
+         * scrolled into the strip or because the selection changed.
+         *
+         * @param tabView  A view created by {@link #onCreateTabView(ViewGroup)}.
+         * @param position The position of the item within the adapter's data set.
+         * @param selected Whether the position is the ViewSwitcher's current item.
+         */
+        void onBindTabView(@NonNull View tabView, int position, boolean selected);
+    }
+
+    public RecyclerTabStripMediator(
+            @NonNull RecyclerView recyclerView,
+            @NonNull ViewSwitcher viewSwitcher) {
+        this(recyclerView, viewSwitcher, null);
+    }
+
+    public RecyclerTabStripMediator(
+            @NonNull RecyclerView recyclerView,
+            @NonNull ViewSwitcher viewSwitcher,
+            @Nullable TabViewStrategy tabViewStrategy) {
+        this(recyclerView, viewSwitcher, true, tabViewStrategy);
+    }
+
+    public RecyclerTabStripMediator(
+            @NonNull RecyclerView recyclerView,
+            @NonNull ViewSwitcher viewSwitcher,
+            boolean autoRefresh,
+            @Nullable TabViewStrategy tabViewStrategy) {
+        this.recyclerView = recyclerView;
+        this.viewSwitcher = viewSwitcher;
+        this.autoRefresh = autoRefresh;
+        this.tabViewStrategy = tabViewStrategy != null
+                ? tabViewStrategy : new PageTitleTabViewStrategy(viewSwitcher);
+    }
+
+    /**
+     * Link the tab strip and the ViewSwitcher together. Must be called after ViewSwitcher has an
+     * adapter set. To be called on a new instance of RecyclerTabStripMediator or if the
+     * ViewSwitcher's adapter changes.
+     *
+     * @throws IllegalStateException If the mediator is already attached, or the ViewSwitcher has no
+     *                               adapter.
+     */
+    public void attach() {
+        if (attached) {
+            throw new IllegalStateException("RecyclerTabStripMediator is already attached");
+        }
+        adapter = viewSwitcher.getAdapter();
+        if (adapter == null) {
+            throw new IllegalStateException(
+                    "RecyclerTabStripMediator attached before ViewSwitcher has an adapter");
+        }
+        attached = true;
+
+        if (recyclerView.getLayoutManager() == null) {
+            recyclerView.setLayoutManager(new LinearLayoutManager(recyclerView.getContext(),
+                    LinearLayoutManager.HORIZONTAL, false));
+        }
+        tabStripAdapter = new TabStripAdapter(viewSwitcher, adapter, tabViewStrategy);
+        tabStripAdapter.selectedPosition = viewSwitcher.getCurrentItem();
+        recyclerView.setAdapter(tabStripAdapter);
+
+        onItemTouchListener = new PreloadOnPressItemTouchListener(viewSwitcher);
+        recyclerView.addOnItemTouchListener(onItemTouchListener);
+
+        onPageChangeListener = new TabStripOnPageChangeListener(recyclerView, viewSwitcher,
+                tabStripAdapter, autoRefresh);
+        viewSwitcher.addOnPageChangeListener(onPageChangeListener);
+
+        if (autoRefresh) {
+            onDataSetChangeListener = new ViewSwitcherOnDataSetChangeListener();
+            viewSwitcher.addOnDataSetChangeListener(onDataSetChangeListener);
+        }
+
+        recyclerView.scrollToPosition(viewSwitcher.getCurrentItem());
+    }
+
+    /**
+     * Unlink the tab strip and the ViewSwitcher. To be called on a stale RecyclerTabStripMediator
+     * if a new one is instantiated, to prevent holding on to a view that should be garbage
+     * collected. Also to be called before {@link #attach()} when a ViewSwitcher's adapter is
+     * changed.
+     */
+    public void detach() {
+        if (onDataSetChangeListener != null) {
+            viewSwitcher.removeOnDataSetChangeListener(onDataSetChangeListener);
+        }
+        viewSwitcher.removeOnPageChangeListener(onPageChangeListener);
+        if (onItemTouchListener != null) {
+            recyclerView.removeOnItemTouchListener(onItemTouchListener);
+        }
+        recyclerView.setAdapter(null);
+        onDataSetChangeListener = null;
+        onItemTouchListener = null;
+        onPageChangeListener = null;
+        tabStripAdapter = null;
+        adapter = null;
+        attached = false;
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    void refreshTabs() {
+        if (tabStripAdapter != null) {
+            final int currentItem = viewSwitcher.getCurrentItem();
+            tabStripAdapter.selectedPosition = currentItem;
+            tabStripAdapter.itemCount = tabStripAdapter.pagerAdapter.getCount();
+            tabStripAdapter.notifyDataSetChanged();
+            if (currentItem < tabStripAdapter.getItemCount()) {
+                recyclerView.scrollToPosition(currentItem);
+            }
+        }
+    }
+
+    private static class TabViewHolder extends RecyclerView.ViewHolder {
+        TabViewHolder(@NonNull View itemView) {
+            super(itemView);
+        }
+    }
+
+    private static class TabStripAdapter extends RecyclerView.Adapter<TabViewHolder> {
+        @NonNull
+        private final ViewSwitcher viewSwitcher;
+        @NonNull
+        private final PagerAdapter pagerAdapter;
+        @NonNull
+        private final TabViewStrategy tabViewStrategy;
+        int selectedPosition;
+        /**
+         * The count as of the last refresh. The RecyclerView must not see a change it was not
+         * notified of, such as one the ViewSwitcher has not processed yet.
+         */
+        int itemCount;
+
+        TabStripAdapter(@NonNull ViewSwitcher viewSwitcher, @NonNull PagerAdapter pagerAdapter,
+                        @NonNull TabViewStrategy tabViewStrategy) {
+            this.viewSwitcher = viewSwitcher;
+            this.pagerAdapter = pagerAdapter;
+            this.tabViewStrategy = tabViewStrategy;
+            itemCount = pagerAdapter.getCount();
+            setHasStableIds(pagerAdapter instanceof ViewSwitcher.StableIdProvider);
+        }
+
+        @NonNull
+        @Override
+        public TabViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            final TabViewHolder holder =
+                    new TabViewHolder(tabViewStrategy.onCreateTabView(parent));
+            holder.itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    final int position = holder.getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        viewSwitcher.setCurrentItem(position);
+                    }
+                }
+            });
+            final View.OnFocusChangeListener focusListener =
+                    holder.itemView.getOnFocusChangeListener();
+            holder.itemView.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+                @Override
+                public void onFocusChange(View v, boolean hasFocus) {
+                    if (focusListener != null) {
+                        focusListener.onFocusChange(v, hasFocus);
+                    }
+                    // Start loading the page's data while the tab is focused.
+                    final int position = holder.getAdapterPosition();
+                    if (hasFocus && position != RecyclerView.NO_POSITION) {
+                        viewSwitcher.preloadData(position);
+                    }
+                }
+            });
+            return holder;
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull TabViewHolder holder, int position) {
+            tabViewStrategy.onBindTabView(holder.itemView, position,
+                    position == selectedPosition);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull TabViewHolder holder, int position,
+                                     @NonNull List<Object> payloads) {
+            // Selection payloads rebind the same way, strategies may skip the unchanged parts.
+            onBindViewHolder(holder, position);
+        }
+
+        @Override
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return viewSwitcher.getItemId(position);
+        }
+
+        void setSelectedPosition(int position) {
+            final int oldPosition = selectedPosition;
+            if (oldPosition == position) {
+                return;
+            }
+            selectedPosition = position;
+            final int count = getItemCount();
+            if (oldPosition >= 0 && oldPosition < count) {
+                notifyItemChanged(oldPosition, PAYLOAD_SELECTION);
+            }
+            if (position >= 0 && position < count) {
+                notifyItemChanged(position, PAYLOAD_SELECTION);
+            }
+        }
+    }
+
+    /**
+     * A {@link ViewSwitcher.OnPageChangeListener} that moves the strip's selection to the new
+     * page, rebinding only the two affected tabs. Holds the strip weakly like TabLayoutMediator's
+     * listener.
+     */
+    private static class TabStripOnPageChangeListener
+            implements ViewSwitcher.OnPageChangeListener {
+        @NonNull
+        private final WeakReference<RecyclerView> recyclerViewRef;
+        @NonNull
+        private final ViewSwitcher viewSwitcher;
+        @NonNull
+        private final TabStripAdapter tabStripAdapter;
+        /**
+         * True if the strip is refreshed and reselected after each data set change.
+         */
+        private final boolean refreshedAfterUpdate;
+
+        TabStripOnPageChangeListener(RecyclerView recyclerView, ViewSwitcher viewSwitcher,
+                                     TabStripAdapter tabStripAdapter,
+                                     boolean refreshedAfterUpdate) {
+            recyclerViewRef = new WeakReference<>(recyclerView);
+            this.viewSwitcher = viewSwitcher;
+            this.tabStripAdapter = tabStripAdapter;
+            this.refreshedAfterUpdate = refreshedAfterUpdate;
+        }
+
+        @Override
+        public void onPageSelected(int position) {
+            if (refreshedAfterUpdate && viewSwitcher.isUpdatingDataSet()) {
+                // refreshTabs() picks up the final position once the update is done.
+                return;
+            }
+            tabStripAdapter.setSelectedPosition(position);
+            final RecyclerView recyclerView = recyclerViewRef.get();
+            if (recyclerView != null && position < tabStripAdapter.getItemCount()) {
+                recyclerView.scrollToPosition(position);
+            }
+        }
+    }
+
+    /**
+     * Starts loading the data of a tab's page while the tab is still pressed, ahead of it being
+     * selected on release. Never intercepts, so the tab still gets its click.
+     */
+    private static class PreloadOnPressItemTouchListener
+            extends RecyclerView.SimpleOnItemTouchListener {
+        @NonNull
+        private final ViewSwitcher viewSwitcher;
+
+        PreloadOnPressItemTouchListener(@NonNull ViewSwitcher viewSwitcher) {
+            this.viewSwitcher = viewSwitcher;
+        }
+
+        @Override
+        public boolean onInterceptTouchEvent(@NonNull RecyclerView recyclerView,
+                                             @NonNull MotionEvent event) {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                final View tabView = recyclerView.findChildViewUnder(event.getX(), event.getY());
+                final int position = tabView != null
+                        ? recyclerView.getChildAdapterPosition(tabView) : RecyclerView.NO_POSITION;
+                if (position != RecyclerView.NO_POSITION) {
+                    viewSwitcher.preloadData(position);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The default {@link TabViewStrategy}, showing the adapter's page title in a TextView.
+     */
+    private static class PageTitleTabViewStrategy implements TabViewStrategy {
+        private static final int HORIZONTAL_PADDING_DP = 16;
+        private static final int MIN_HEIGHT_DP = 48;
+
+        @NonNull
+        private final ViewSwitcher viewSwitcher;
+
+        PageTitleTabViewStrategy(@NonNull ViewSwitcher viewSwitcher) {
+            this.viewSwitcher = viewSwitcher;
+        }
+
+        @NonNull
+        @Override
+        public View onCreateTabView(@NonNull ViewGroup parent) {
+            final TextView textView = new TextView(parent.getContext());
+            final float density = parent.getResources().getDisplayMetrics().density;
+            final int padding = (int) (HORIZONTAL_PADDING_DP * density);
+            textView.setPadding(padding, 0, padding, 0);
+            textView.setMinimumHeight((int) (MIN_HEIGHT_DP * density));
+            textView.setGravity(Gravity.CENTER);
+            textView.setSingleLine(true);
+            textView.setEllipsize(TextUtils.TruncateAt.END);
+            textView.setLayoutParams(new RecyclerView.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            return textView;
+        }
+
+        @Override
+        public void onBindTabView(@NonNull View tabView, int position, boolean selected) {
+            final PagerAdapter adapter = viewSwitcher.getAdapter();
+            ((TextView) tabView).setText(adapter != null ? adapter.getPageTitle(position) : null);
+            tabView.setSelected(selected);
+        }
+    }
+
+    private class ViewSwitcherOnDataSetChangeListener
+            implements ViewSwitcher.OnDataSetChangeListener {
+        ViewSwitcherOnDataSetChangeListener() {
+        }
+
+        @Override
+        public void onDataSetChanged(@NonNull ViewSwitcher viewSwitcher) {
+            refreshTabs();
+        }
+    }
+}
@@ -16,16 +16,22 @@
 
 package com.fiberthemax.viewswitcher;
 
-import android.database.DataSetObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.MotionEvent;
+import android.view.View;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.viewpager.widget.PageWorkScheduler;
 import androidx.viewpager.widget.PagerAdapter;
 import androidx.viewpager.widget.ViewSwitcher;
 
 import com.google.android.material.tabs.TabLayout;
 
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
 
 /**
  * A mediator to link a TabLayout with a ViewSwitcher. The mediator will synchronize the ViewSwitcher's
@@ -41,6 +47,18 @@ import java.lang.ref.WeakReference;
  * tabs that you require. Changing ViewSwitcher's adapter will require a {@link #detach()} followed by
  * {@link #attach()} call. Changing the ViewSwitcher or TabLayout will require a new instantiation of
  * TabLayoutMediator.
+ *
+ * <p>If configuring a tab is expensive, supply an {@link AsyncTabConfigurationStrategy} instead.
+ * Tabs are then created with a cheap placeholder configuration and the expensive part runs in one
+ * background job per population of the tabs, on the shared {@link PageWorkScheduler} after the
+ * work pages are waiting for, with results applied to their tabs on the main thread. Results for
+ * tabs that were removed or recreated in the meantime are discarded.
+ *
+ * <p>The data of a tab's page is preloaded, see {@link ViewSwitcher#preloadData(int)}, as soon as
+ * the tab is pressed or gains focus from a D-pad or keyboard, ahead of it being selected. For
+ * this the mediator sets the tab views' OnTouchListener, so set touch listeners of your own
+ * through {@link #setOnTabTouchListener(View.OnTouchListener)}. Their focus listeners are
+ * chained.
  */
 public final class TabLayoutMediator {
     @NonNull
@@ -51,6 +69,20 @@ public final class TabLayoutMediator {
     @Nullable
     private TabConfigurationStrategy tabConfigurationStrategy;
     @Nullable
+    private final AsyncTabConfigurationStrategy<?> asyncTabConfigurationStrategy;
+    /**
+     * The executor async configurations run on, or null for {@link PageWorkScheduler#getDefault()}.
+     */
+    @Nullable
+    private final Executor asyncExecutor;
+    @NonNull
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Incremented whenever the tabs are recreated or the mediator is detached, so that async
+     * configurations started for older tabs can be told apart and discarded.
+     */
+    private volatile int tabGeneration;
+    @Nullable
     private PagerAdapter adapter;
     private boolean attached;
 
@@ -59,7 +91,9 @@ public final class TabLayoutMediator {
     @Nullable
     private TabLayout.OnTabSelectedListener onTabSelectedListener;
     @Nullable
-    private DataSetObserver pagerAdapterObserver;
+    private ViewSwitcher.OnDataSetChangeListener onDataSetChangeListener;
+    @Nullable
+    private View.OnTouchListener onTabTouchListener;
 
     /**
      * A callback interface that must be implemented to set the text and styling of newly created
@@ -77,6 +111,43 @@ public final class TabLayoutMediator {
         void onConfigureTab(@NonNull TabLayout.Tab tab, int position);
     }
 
+    /**
+     * A callback interface to configure tabs in two steps, a cheap one on the main thread when the
+     * tab is created and an expensive one on a background thread.
+     *
+     * @param <T> The type of the configuration loaded in the background.
+     */
+    public interface AsyncTabConfigurationStrategy<T> {
+        /**
+         * Called on the main thread to give a newly created tab a cheap placeholder configuration.
+         *
+         * @param tab      The Tab to configure.
+         * @param position The position of the item within the adapter's data set.
+         */
+        void onConfigurePlaceholderTab(@NonNull TabLayout.Tab tab, int position);
+
+        /**
+         * Called on a background thread to compute the tab's configuration, for example a title
+         * with counts, an icon or spans.
+         *
+         * @param position The position of the item within the adapter's data set.
+         * @return The configuration, or null to keep the placeholder.
+         */
+        @Nullable
+        T onLoadTabConfiguration(int position);
+
+        /**
+         * Called on the main thread to apply a configuration returned by {@link
+         * #onLoadTabConfiguration(int)}, only if the tab still exists.
+         *
+         * @param tab           The Tab to configure.
+         * @param position      The position of the item within the adapter's data set.
+         * @param configuration The loaded configuration.
+         */
+        void onApplyTabConfiguration(@NonNull TabLayout.Tab tab, int position,
+                                     @NonNull T configuration);
+    }
+
 
     public TabLayoutMediator(
             @NonNull TabLayout tabLayout,
@@ -100,6 +171,47 @@ public final class TabLayoutMediator {
         this.viewSwitcher = viewSwitcher;
         this.autoRefresh = autoRefresh;
         this.tabConfigurationStrategy = tabConfigurationStrategy;
+        this.asyncTabConfigurationStrategy = null;
+        this.asyncExecutor = null;
+    }
+
+    public TabLayoutMediator(
+            @NonNull TabLayout tabLayout,
+            @NonNull ViewSwitcher viewSwitcher,
+            boolean autoRefresh,
+            @NonNull AsyncTabConfigurationStrategy<?> asyncTabConfigurationStrategy) {
+        this(tabLayout, viewSwitcher, autoRefresh, asyncTabConfigurationStrategy, null);
+    }
+
+    /**
+     * @param asyncExecutor The executor that
+     *                      {@link AsyncTabConfigurationStrategy#onLoadTabConfiguration(int)} runs
+     *                      on, given one job per population of the tabs. Null for
+     *                      {@link PageWorkScheduler#getDefault()}.
+     */
+    public TabLayoutMediator(
+            @NonNull TabLayout tabLayout,
+            @NonNull ViewSwitcher viewSwitcher,
+            boolean autoRefresh,
+            @NonNull AsyncTabConfigurationStrategy<?> asyncTabConfigurationStrategy,
+            @Nullable Executor asyncExecutor) {
+        this.tabLayout = tabLayout;
+        this.viewSwitcher = viewSwitcher;
+        this.autoRefresh = autoRefresh;
+        this.tabConfigurationStrategy = null;
+        this.asyncTabConfigurationStrategy = asyncTabConfigurationStrategy;
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Set a touch listener for the tabs' views, in place of setting one on them directly which
+     * would replace the mediator's own. It is called first, an event it consumes is not seen by
+     * the mediator.
+     *
+     * @param listener The listener, or null to remove it
+     */
+    public void setOnTabTouchListener(@Nullable View.OnTouchListener listener) {
+        onTabTouchListener = listener;
     }
 
     /**
@@ -122,19 +234,20 @@ public final class TabLayoutMediator {
         attached = true;
 
         // Add our custom OnPageChangeListener to the ViewSwitcher
-        onPageChangeListener = new TabLayoutOnPageChangeListener(tabLayout);
+        onPageChangeListener =
+                new TabLayoutOnPageChangeListener(tabLayout, viewSwitcher, autoRefresh);
         viewSwitcher.addOnPageChangeListener(onPageChangeListener);
 
         // Now we'll add a tab selected listener to set ViewSwitcher's current item
         onTabSelectedListener = new ViewSwitcherOnTabSelectedListener(viewSwitcher);
         tabLayout.addOnTabSelectedListener(onTabSelectedListener);
 
-        // Now we'll populate ourselves from the pager adapter, adding an observer if
-        // autoRefresh is enabled
+        // Now we'll populate ourselves from the pager adapter, following the ViewSwitcher's data
+        // set changes if autoRefresh is enabled. Listening to the ViewSwitcher rather than the
+        // adapter guarantees its current item is final by the time we select a tab.
         if (autoRefresh) {
-            // Register our observer on the new adapter
-            pagerAdapterObserver = new PagerAdapterObserver();
-            adapter.registerDataSetObserver(pagerAdapterObserver);
+            onDataSetChangeListener = new ViewSwitcherOnDataSetChangeListener();
+            viewSwitcher.addOnDataSetChangeListener(onDataSetChangeListener);
         }
 
         populateTabsFromPagerAdapter();
@@ -149,30 +262,85 @@ public final class TabLayoutMediator {
      * called before {@link #attach()} when a ViewSwitcher's adapter is changed.
      */
     public void detach() {
-        adapter.unregisterDataSetObserver(pagerAdapterObserver);
+        // Discard any pending async configurations.
+        tabGeneration++;
+        cancelAsyncConfiguration();
+        if (onDataSetChangeListener != null) {
+            viewSwitcher.removeOnDataSetChangeListener(onDataSetChangeListener);
+        }
         tabLayout.removeOnTabSelectedListener(onTabSelectedListener);
         viewSwitcher.removeOnPageChangeListener(onPageChangeListener);
-        pagerAdapterObserver = null;
+        stopPreloadingOnPress();
+        onDataSetChangeListener = null;
         onTabSelectedListener = null;
         onPageChangeListener = null;
         adapter = null;
         attached = false;
     }
 
+    /**
+     * Print the state of this mediator, for example from
+     * {@link android.app.Activity#dump(String, java.io.FileDescriptor, PrintWriter, String[])}
+     * next to {@link ViewSwitcher#dump(PrintWriter)}.
+     *
+     * @param writer The writer to print to
+     */
+    public void dump(@NonNull PrintWriter writer) {
+        dump("", writer);
+    }
+
+    /**
+     * Like {@link #dump(PrintWriter)}, with every line starting with the given prefix.
+     */
+    public void dump(@NonNull String prefix, @NonNull PrintWriter writer) {
+        final String inner = prefix + "  ";
+        writer.print(prefix);
+        writer.print("TabLayoutMediator{");
+        writer.print(Integer.toHexString(System.identityHashCode(this)));
+        writer.println(attached ? " attached}" : " detached}");
+        writer.print(inner);
+        writer.print("autoRefresh=");
+        writer.print(autoRefresh);
+        writer.print(" tabGeneration=");
+        writer.print(tabGeneration);
+        writer.print(" strategy=");
+        writer.println(asyncTabConfigurationStrategy != null ? "async"
+                : tabConfigurationStrategy != null ? "sync" : "titles");
+        writer.print(inner);
+        writer.print("tabs=");
+        writer.print(tabLayout.getTabCount());
+        writer.print(" adapterCount=");
+        writer.print(adapter != null ? String.valueOf(adapter.getCount()) : "-");
+        writer.print(" selectedTab=");
+        writer.print(tabLayout.getSelectedTabPosition());
+        writer.print(" currentItem=");
+        writer.println(viewSwitcher.getCurrentItem());
+    }
+
     @SuppressWarnings("WeakerAccess")
     void populateTabsFromPagerAdapter() {
+        // Removed tab views are pooled by the TabLayout, leave them as they were.
+        stopPreloadingOnPress();
         tabLayout.removeAllTabs();
+        final int generation = ++tabGeneration;
+        cancelAsyncConfiguration();
 
         if (adapter != null) {
             int adapterCount = adapter.getCount();
             for (int i = 0; i < adapterCount; i++) {
                 TabLayout.Tab tab = tabLayout.newTab();
-                if (tabConfigurationStrategy != null) {
+                if (asyncTabConfigurationStrategy != null) {
+                    asyncTabConfigurationStrategy.onConfigurePlaceholderTab(tab, i);
+                } else if (tabConfigurationStrategy != null) {
                     tabConfigurationStrategy.onConfigureTab(tab, i);
                 } else {
                     tab.setText(adapter.getPageTitle(i));
                 }
                 tabLayout.addTab(tab, false);
+                preloadDataOnPress(tab);
+            }
+            if (asyncTabConfigurationStrategy != null && adapterCount > 0) {
+                configureTabsAsync(asyncTabConfigurationStrategy, generation);
             }
             // Make sure we reflect the currently set ViewSwitcher item
             if (adapterCount > 0) {
@@ -185,6 +353,92 @@ public final class TabLayoutMediator {
         }
     }
 
+    /**
+     * Starts loading the data of the tab's page while the tab is still pressed or focused, ahead
+     * of it being selected.
+     */
+    private void preloadDataOnPress(@NonNull TabLayout.Tab tab) {
+        View.OnFocusChangeListener focusListener = tab.view.getOnFocusChangeListener();
+        if (focusListener instanceof PreloadOnPressListener) {
+            // A pooled tab view, set up by an earlier population.
+            focusListener = ((PreloadOnPressListener) focusListener).chainedFocusListener;
+        }
+        final PreloadOnPressListener listener = new PreloadOnPressListener(tab, focusListener);
+        tab.view.setOnTouchListener(listener);
+        tab.view.setOnFocusChangeListener(listener);
+    }
+
+    /**
+     * Hands the tab views' listeners back to the app.
+     */
+    private void stopPreloadingOnPress() {
+        for (int i = 0, count = tabLayout.getTabCount(); i < count; i++) {
+            final TabLayout.Tab tab = tabLayout.getTabAt(i);
+            if (tab == null) {
+                continue;
+            }
+            final View.OnFocusChangeListener focusListener = tab.view.getOnFocusChangeListener();
+            if (focusListener instanceof PreloadOnPressListener) {
+                tab.view.setOnFocusChangeListener(
+                        ((PreloadOnPressListener) focusListener).chainedFocusListener);
+                tab.view.setOnTouchListener(onTabTouchListener);
+            }
+        }
+    }
+
+    /**
+     * Loads the configurations of all tabs in a single background job, however many tabs there
+     * are.
+     */
+    private <T> void configureTabsAsync(
+            @NonNull final AsyncTabConfigurationStrategy<T> strategy, final int generation) {
+        final TabLayout.Tab[] tabs = new TabLayout.Tab[tabLayout.getTabCount()];
+        for (int i = 0; i < tabs.length; i++) {
+            tabs[i] = tabLayout.getTabAt(i);
+        }
+        final Runnable load = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < tabs.length; i++) {
+                    if (generation != tabGeneration) {
+                        // The tabs were recreated, the rest of them too.
+                        return;
+                    }
+                    final T configuration = strategy.onLoadTabConfiguration(i);
+                    if (configuration != null && tabs[i] != null) {
+                        applyTabConfiguration(strategy, tabs[i], i, configuration, generation);
+                    }
+                }
+            }
+        };
+        if (asyncExecutor != null) {
+            asyncExecutor.execute(load);
+        } else {
+            PageWorkScheduler.getDefault().submit(this, -1,
+                    PageWorkScheduler.PRIORITY_SPECULATIVE, load);
+        }
+    }
+
+    private <T> void applyTabConfiguration(
+            @NonNull final AsyncTabConfigurationStrategy<T> strategy,
+            @NonNull final TabLayout.Tab tab, final int position, @NonNull final T configuration,
+            final int generation) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == tabGeneration && tabLayout.getTabAt(position) == tab) {
+                    strategy.onApplyTabConfiguration(tab, position, configuration);
+                }
+            }
+        });
+    }
+
+    private void cancelAsyncConfiguration() {
+        if (asyncTabConfigurationStrategy != null && asyncExecutor == null) {
+            PageWorkScheduler.getDefault().cancel(this);
+        }
+    }
+
     /**
      * A {@link ViewSwitcher.OnPageChangeListener} class which contains the necessary calls back to the
      * provided {@link TabLayout} so that the tab position is kept in sync.
@@ -196,13 +450,27 @@ public final class TabLayoutMediator {
     private static class TabLayoutOnPageChangeListener implements ViewSwitcher.OnPageChangeListener {
         @NonNull
         private final WeakReference<TabLayout> tabLayoutRef;
+        @NonNull
+        private final ViewSwitcher viewSwitcher;
+        /**
+         * True if the tabs are rebuilt and reselected after each data set change.
+         */
+        private final boolean refreshedAfterUpdate;
 
-        TabLayoutOnPageChangeListener(TabLayout tabLayout) {
+        TabLayoutOnPageChangeListener(TabLayout tabLayout, ViewSwitcher viewSwitcher,
+                                      boolean refreshedAfterUpdate) {
             tabLayoutRef = new WeakReference<>(tabLayout);
+            this.viewSwitcher = viewSwitcher;
+            this.refreshedAfterUpdate = refreshedAfterUpdate;
         }
 
         @Override
         public void onPageSelected(final int position) {
+            if (refreshedAfterUpdate && viewSwitcher.isUpdatingDataSet()) {
+                // The tabs still reflect the old data set, they are rebuilt and selected once
+                // the ViewSwitcher has finished updating.
+                return;
+            }
             TabLayout tabLayout = tabLayoutRef.get();
             if (tabLayout != null
                     && tabLayout.getSelectedTabPosition() != position
@@ -241,13 +509,63 @@ public final class TabLayoutMediator {
         }
     }
 
-    private class PagerAdapterObserver extends DataSetObserver {
-        PagerAdapterObserver() {
+    private class ViewSwitcherOnDataSetChangeListener
+            implements ViewSwitcher.OnDataSetChangeListener {
+        ViewSwitcherOnDataSetChangeListener() {
         }
 
         @Override
-        public void onChanged() {
+        public void onDataSetChanged(@NonNull ViewSwitcher viewSwitcher) {
             populateTabsFromPagerAdapter();
         }
     }
+
+    /**
+     * Preloads the data of a tab's page when the tab is pressed or gains focus. Never consumes
+     * events, so the tab still gets its click.
+     */
+    private class PreloadOnPressListener
+            implements View.OnTouchListener, View.OnFocusChangeListener {
+        @NonNull
+        private final TabLayout.Tab tab;
+        /**
+         * The focus listener the tab view had before, called first.
+         */
+        @Nullable
+        final View.OnFocusChangeListener chainedFocusListener;
+
+        PreloadOnPressListener(@NonNull TabLayout.Tab tab,
+                               @Nullable View.OnFocusChangeListener chainedFocusListener) {
+            this.tab = tab;
+            this.chainedFocusListener = chainedFocusListener;
+        }
+
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (onTabTouchListener != null && onTabTouchListener.onTouch(v, event)) {
+                return true;
+            }
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                preload();
+            }
+            return false;
+        }
+
+        @Override
+        public void onFocusChange(View v, boolean hasFocus) {
+            if (chainedFocusListener != null) {
+                chainedFocusListener.onFocusChange(v, hasFocus);
+            }
+            if (hasFocus) {
+                preload();
+            }
+        }
+
+        private void preload() {
+            final int position = tab.getPosition();
+            if (position >= 0) {
+                viewSwitcher.preloadData(position);
+            }
+        }
+    }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2018 fiberthemax
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fiberthemax.viewswitcher;
+
+import android.os.Parcelable;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
+import androidx.viewpager.widget.PagerAdapter;
+import androidx.viewpager.widget.ViewSwitcher;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link PagerAdapter} for {@link ViewSwitcher} that represents each page as a
+ * {@link Fragment} which is kept alive, along with its ViewModels, for as long as the adapter's
+ * FragmentManager is. Only the view of a page is destroyed when the page is hidden.
+ *
+ * <p>A hidden page's fragment is detached, so the FragmentManager captures its view hierarchy
+ * state, such as scroll positions, before destroying the view, and restores it into the view the
+ * fragment creates when the page is shown again. The state is kept by the fragment itself, so
+ * there is a single copy, and it is part of the FragmentManager's saved state across process
+ * death. Views need ids for their state to be captured, as with
+ * {@link View#saveHierarchyState(SparseArray)}.</p>
+ *
+ * <p>To bound the number of fragments kept, see {@link #setMaxDetachedPages(int)}. Beyond that
+ * limit the least recently hidden fragments are removed, and the state the ViewSwitcher captured
+ * when they were hidden, see {@link ViewSwitcher.PageStateSaver}, is handed to the fragment that
+ * replaces them once their page is shown again.</p>
+ *
+ * <p>Only the current page is resumed, the others are capped at
+ * {@link Lifecycle.State#STARTED}. Subclasses only need to implement {@link #getItem(int)} and
+ * {@link #getCount()}, and should override {@link #getItemId(int)} if items can move.</p>
+ */
+public abstract class ViewReleasingFragmentPagerAdapter extends PagerAdapter
+        implements ViewSwitcher.StableIdProvider, ViewSwitcher.PageStateSaver {
+    private static final String TAG_PREFIX = "android:switcher:";
+
+    /**
+     * No limit on the number of detached fragments, see {@link #setMaxDetachedPages(int)}.
+     */
+    public static final int UNLIMITED_DETACHED_PAGES = -1;
+
+    @NonNull
+    private final FragmentManager fragmentManager;
+    @Nullable
+    private FragmentTransaction curTransaction;
+    @Nullable
+    private Fragment currentPrimaryItem;
+    private int maxDetachedPages = UNLIMITED_DETACHED_PAGES;
+    /**
+     * The fragments of hidden pages, least recently hidden first.
+     */
+    private final ArrayList<Fragment> detachedFragments = new ArrayList<>();
+    /**
+     * New fragments and their tags, only added once they may have been given a saved state.
+     */
+    private final ArrayList<Fragment> pendingFragments = new ArrayList<>();
+    private final ArrayList<String> pendingTags = new ArrayList<>();
+    private int pendingContainerId;
+
+    public ViewReleasingFragmentPagerAdapter(@NonNull FragmentManager fragmentManager) {
+        this.fragmentManager = fragmentManager;
+    }
+
+    /**
+     * Set how many fragments of hidden pages are kept detached, along with their ViewModels.
+     * Beyond that the least recently hidden are removed. The ViewSwitcher then keeps their saved
+     * state, and a new fragment is created from it when the page is shown again. Unlimited by
+     * default, in which case the ViewSwitcher keeps no state as the fragments keep their own.
+     *
+     * <p>Pages that were detached before the activity was recreated only count towards the limit
+     * once they have been shown and hidden again.</p>
+     *
+     * @param max The number of detached fragments to keep, or {@link #UNLIMITED_DETACHED_PAGES}
+     */
+    public void setMaxDetachedPages(int max) {
+        if (max < 0 && max != UNLIMITED_DETACHED_PAGES) {
+            throw new IllegalArgumentException("Invalid max detached pages: " + max);
+        }
+        maxDetachedPages = max;
+        if (max == UNLIMITED_DETACHED_PAGES) {
+            detachedFragments.clear();
+        }
+    }
+
+    /**
+     * Return the Fragment associated with a specified position.
+     */
+    @NonNull
+    public abstract Fragment getItem(int position);
+
+    /**
+     * Return a unique identifier for the item at the given position. The default implementation
+     * returns the given position. Subclasses should override this method if the positions of
+     * items can change.
+     */
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public void startUpdate(@NonNull ViewGroup container) {
+        if (container.getId() == View.NO_ID) {
+            throw new IllegalStateException("ViewSwitcher with adapter " + this
+                    + " requires a view id");
+        }
+    }
+
+    @NonNull
+    @Override
+    public Object instantiateItem(@NonNull ViewGroup container, int position) {
+        final FragmentTransaction transaction = ensureTransaction();
+
+        final long itemId = getItemId(position);
+        final String name = makeFragmentName(container.getId(), itemId);
+        Fragment fragment = fragmentManager.findFragmentByTag(name);
+        if (fragment != null) {
+            transaction.attach(fragment);
+            detachedFragments.remove(fragment);
+            if (fragment != currentPrimaryItem) {
+                fragment.setMenuVisibility(false);
+                transaction.setMaxLifecycle(fragment, Lifecycle.State.STARTED);
+            }
+        } else {
+            // Added by the next transaction call, after restorePageState.
+            fragment = getItem(position);
+            fragment.setMenuVisibility(false);
+            pendingFragments.add(fragment);
+            pendingTags.add(name);
+            pendingContainerId = container.getId();
+        }
+        return fragment;
+    }
+
+    @Override
+    public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
+        final Fragment fragment = (Fragment) object;
+        final FragmentTransaction transaction = ensureTransaction();
+        // Detaching destroys the view but keeps the fragment, its ViewModels and its view state.
+        transaction.detach(fragment);
+        if (fragment == currentPrimaryItem) {
+            currentPrimaryItem = null;
+        }
+        if (maxDetachedPages != UNLIMITED_DETACHED_PAGES) {
+            detachedFragments.add(fragment);
+            while (detachedFragments.size() > maxDetachedPages) {
+                transaction.remove(detachedFragments.remove(0));
+            }
+        }
+    }
+
+    /**
+     * Returns the fragment's saved state when fragments are removed beyond
+     * {@link #setMaxDetachedPages(int)}, so that it can be restored if it is.
+     */
+    @Nullable
+    @Override
+    public Parcelable savePageState(int position, @NonNull Object object) {
+        final Fragment fragment = (Fragment) object;
+        if (maxDetachedPages == UNLIMITED_DETACHED_PAGES || !fragment.isAdded()) {
+            return null;
+        }
+        return fragmentManager.saveFragmentInstanceState(fragment);
+    }
+
+    /**
+     * Hands the state to a fragment created for a page whose fragment was removed. A fragment that
+     * was kept restores its own, more recent state.
+     */
+    @Override
+    public void restorePageState(int position, @NonNull Object object,
+                                 @NonNull Parcelable state) {
+        final Fragment fragment = (Fragment) object;
+        if (pendingFragments.contains(fragment) && state instanceof Fragment.SavedState) {
+            fragment.setInitialSavedState((Fragment.SavedState) state);
+        }
+    }
+
+    @Override
+    public void setPrimaryItem(@NonNull ViewGroup container, int position,
+                               @NonNull Object object) {
+        final Fragment fragment = (Fragment) object;
+        if (fragment != currentPrimaryItem) {
+            final FragmentTransaction transaction = ensureTransaction();
+            if (currentPrimaryItem != null) {
+                currentPrimaryItem.setMenuVisibility(false);
+                transaction.setMaxLifecycle(currentPrimaryItem, Lifecycle.State.STARTED);
+            }
+            fragment.setMenuVisibility(true);
+            transaction.setMaxLifecycle(fragment, Lifecycle.State.RESUMED);
+            currentPrimaryItem = fragment;
+        }
+    }
+
+    @Override
+    public void finishUpdate(@NonNull ViewGroup container) {
+        if (curTransaction != null || !pendingFragments.isEmpty()) {
+            ensureTransaction().commitNowAllowingStateLoss();
+            curTransaction = null;
+        }
+    }
+
+    @Override
+    public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+        return ((Fragment) object).getView() == view;
+    }
+
+    /**
+     * Returns the current transaction, with the pending fragments added to it. A fragment can no
+     * longer be given a saved state once it is added, so this is only called after
+     * restorePageState had its chance.
+     */
+    @NonNull
+    private FragmentTransaction ensureTransaction() {
+        if (curTransaction == null) {
+            curTransaction = fragmentManager.beginTransaction();
+        }
+        for (int i = 0, z = pendingFragments.size(); i < z; i++) {
+            final Fragment fragment = pendingFragments.get(i);
+            curTransaction.add(pendingContainerId, fragment, pendingTags.get(i));
+            if (fragment != currentPrimaryItem) {
+                curTransaction.setMaxLifecycle(fragment, Lifecycle.State.STARTED);
+            }
+        }
+        pendingFragments.clear();
+        pendingTags.clear();
+        return curTransaction;
+    }
+
+    private static String makeFragmentName(int viewId, long id) {
+        return TAG_PREFIX + viewId + ":" + id;
+    }
+}
@@ -0,0 +1,134 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+import android.view.Menu;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.fiberthemax.viewswitcher.BottomNavigationMediator;
+import com.google.android.material.R;
+import com.google.android.material.bottomnavigation.BottomNavigationView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BottomNavigationMediatorTest {
+    private static final int[] ITEM_IDS = {10, 11, 12};
+
+    private ViewSwitcher mViewSwitcher;
+    private BottomNavigationView mBottomNavigationView;
+    private TestPagerAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        activity.setTheme(R.style.Theme_MaterialComponents_Light);
+        mViewSwitcher = attachViewSwitcher(activity);
+        mBottomNavigationView = new BottomNavigationView(activity);
+        // Added in reverse, so that menu order differs from the item ids' order.
+        for (int i = ITEM_IDS.length - 1; i >= 0; i--) {
+            mBottomNavigationView.getMenu().add(Menu.NONE, ITEM_IDS[i], Menu.NONE, "item " + i);
+        }
+        mAdapter = new TestPagerAdapter("a", "b", "c");
+        mViewSwitcher.setAdapter(mAdapter);
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void menuItemsMapToPositionsInMenuOrder() {
+        final BottomNavigationMediator mediator =
+                new BottomNavigationMediator(mBottomNavigationView, mViewSwitcher);
+        mediator.attach();
+
+        assertEquals(0, mediator.getPositionForItemId(12));
+        assertEquals(2, mediator.getPositionForItemId(10));
+        assertEquals(-1, mediator.getPositionForItemId(13));
+        assertEquals(11, mediator.getItemIdForPosition(1));
+        assertEquals(View.NO_ID, mediator.getItemIdForPosition(3));
+    }
+
+    @Test
+    public void selectionIsKeptInSyncThroughGivenItemIds() {
+        new BottomNavigationMediator(mBottomNavigationView, mViewSwitcher, ITEM_IDS).attach();
+        assertEquals(10, mBottomNavigationView.getSelectedItemId());
+
+        mBottomNavigationView.setSelectedItemId(12);
+        assertEquals(2, mViewSwitcher.getCurrentItem());
+
+        mViewSwitcher.setCurrentItem(1);
+        assertEquals(11, mBottomNavigationView.getSelectedItemId());
+    }
+
+    @Test
+    public void pressedItemPrewarmsItsPageAfterAppTouchListener() {
+        final BottomNavigationMediator mediator =
+                new BottomNavigationMediator(mBottomNavigationView, mViewSwitcher, ITEM_IDS);
+        mediator.attach();
+        final List<View> touched = new ArrayList<>();
+        final View consumingView = mBottomNavigationView.findViewById(ITEM_IDS[1]);
+        mediator.setOnItemTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                touched.add(v);
+                return v == consumingView;
+            }
+        });
+        final int instantiateCount = mAdapter.mInstantiateCount;
+
+        pressDown(consumingView);
+        assertEquals(instantiateCount, mAdapter.mInstantiateCount);
+        final View itemView = mBottomNavigationView.findViewById(ITEM_IDS[2]);
+        pressDown(itemView);
+
+        assertEquals(Arrays.asList(consumingView, itemView), touched);
+        assertEquals(instantiateCount + 1, mAdapter.mInstantiateCount);
+    }
+
+    @Test
+    public void focusedItemPrewarmsItsPageAndFocusListenersAreHandedBack() {
+        final View itemView = mBottomNavigationView.findViewById(ITEM_IDS[1]);
+        final List<Boolean> focusChanges = new ArrayList<>();
+        final View.OnFocusChangeListener appListener = new View.OnFocusChangeListener() {
+            @Override
+            public void onFocusChange(View v, boolean hasFocus) {
+                focusChanges.add(hasFocus);
+            }
+        };
+        itemView.setOnFocusChangeListener(appListener);
+        final BottomNavigationMediator mediator =
+                new BottomNavigationMediator(mBottomNavigationView, mViewSwitcher, ITEM_IDS);
+        mediator.attach();
+        final int instantiateCount = mAdapter.mInstantiateCount;
+
+        itemView.getOnFocusChangeListener().onFocusChange(itemView, true);
+
+        assertEquals(Collections.singletonList(true), focusChanges);
+        assertEquals(instantiateCount + 1, mAdapter.mInstantiateCount);
+
+        mediator.detach();
+
+        assertSame(appListener, itemView.getOnFocusChangeListener());
+    }
+
+    private static void pressDown(View view) {
+        final MotionEvent event = MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 1, 1, 0);
+        view.dispatchTouchEvent(event);
+        event.recycle();
+    }
+}
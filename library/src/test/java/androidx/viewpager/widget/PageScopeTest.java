@@ -0,0 +1,96 @@
+package androidx.viewpager.widget;
+
+
+import androidx.lifecycle.Lifecycle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.Executor;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PageScopeTest {
+
+    private ViewSwitcher mViewSwitcher;
+
+    @Before
+    public void setUp() {
+        mViewSwitcher = attachViewSwitcher();
+        mViewSwitcher.setAdapter(new TestPagerAdapter("a", "b", "c"));
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void currentPageScopeIsResumed() {
+        final PageScope scope = mViewSwitcher.getPageScope(0);
+
+        assertNotNull(scope);
+        assertEquals(Lifecycle.State.RESUMED, scope.getLifecycle().getCurrentState());
+        assertNull(mViewSwitcher.getPageScope(1));
+    }
+
+    @Test
+    public void scopeIsCancelledWhenPageIsDestroyed() {
+        final PageScope scope = mViewSwitcher.getPageScope(0);
+        final boolean[] ran = new boolean[1];
+        // Keep the posted work queued until after the switch.
+        ShadowLooper.pauseMainLooper();
+        scope.getMainExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+
+        mViewSwitcher.setCurrentItem(1);
+        layout(mViewSwitcher);
+        ShadowLooper.unPauseMainLooper();
+
+        assertTrue(scope.isCancelled());
+        assertTrue(scope.getCancellationSignal().isCanceled());
+        assertEquals(Lifecycle.State.DESTROYED, scope.getLifecycle().getCurrentState());
+        assertFalse(ran[0]);
+    }
+
+    @Test
+    public void wrappedExecutorDropsWorkAfterCancel() {
+        final PageScope scope = mViewSwitcher.getPageScope(0);
+        final int[] runs = new int[1];
+        final Executor executor = scope.wrap(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        });
+        mViewSwitcher.setAdapter(null);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        });
+
+        assertTrue(scope.isCancelled());
+        assertEquals(1, runs[0]);
+    }
+}
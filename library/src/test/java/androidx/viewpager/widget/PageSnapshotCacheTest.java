@@ -0,0 +1,145 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PageSnapshotCacheTest {
+    private static final long ITEM_ID = 42;
+    private static final int SIZE = ViewSwitcherTestUtils.SIZE;
+    private static final long TIMEOUT = 5000; // ms
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private PageSnapshotCache mCache;
+    private Configuration mConfiguration;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "snapshot");
+        mCache = new PageSnapshotCache(mFile);
+        mConfiguration = new Configuration();
+        mConfiguration.orientation = Configuration.ORIENTATION_PORTRAIT;
+        mConfiguration.densityDpi = 160;
+        mConfiguration.fontScale = 1f;
+        // Straight on this thread, as the scheduler would off the main thread.
+        mCache.write(ITEM_ID, SIZE, SIZE, PageSnapshotCache.configurationKey(mConfiguration),
+                newBitmap());
+    }
+
+    @Test
+    public void snapshotIsLoadedForSameItemSizeAndConfiguration() {
+        assertNotNull(mCache.load(ITEM_ID, SIZE, SIZE, mConfiguration));
+    }
+
+    @Test
+    public void snapshotOfOtherItemIsNotShownButKept() {
+        assertNull(mCache.load(ITEM_ID + 1, SIZE, SIZE, mConfiguration));
+        assertTrue(mFile.exists());
+    }
+
+    @Test
+    public void snapshotOfOtherSizeIsDiscarded() {
+        assertNull(mCache.load(ITEM_ID, SIZE, SIZE * 2, mConfiguration));
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void snapshotOfOtherConfigurationIsDiscarded() {
+        final Configuration landscape = new Configuration(mConfiguration);
+        landscape.orientation = Configuration.ORIENTATION_LANDSCAPE;
+
+        assertNull(mCache.load(ITEM_ID, SIZE, SIZE, landscape));
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void missingSnapshotIsNotLoaded() {
+        mCache.clear();
+
+        assertNull(mCache.load(ITEM_ID, SIZE, SIZE, mConfiguration));
+    }
+
+    @Test
+    public void onlyLatestOfQuickSavesIsWritten() throws InterruptedException {
+        final PageWorkScheduler scheduler = new PageWorkScheduler(2);
+        mCache.setScheduler(scheduler);
+        final View page = new View(Robolectric.buildActivity(Activity.class).get());
+        page.layout(0, 0, SIZE, SIZE);
+
+        mCache.save(ITEM_ID + 1, page, mConfiguration);
+        mCache.save(ITEM_ID + 2, page, mConfiguration);
+        awaitIdle(scheduler);
+
+        assertNull(mCache.load(ITEM_ID + 1, SIZE, SIZE, mConfiguration));
+        assertNotNull(mCache.load(ITEM_ID + 2, SIZE, SIZE, mConfiguration));
+    }
+
+    @Test
+    public void snapshotIsShownUntilFirstPageHasDrawn() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        final ViewSwitcher viewSwitcher = attachViewSwitcher(activity);
+        final TestPagerAdapter adapter = new TestPagerAdapter("a", "b");
+        mCache.write(adapter.getItemId(0), SIZE, SIZE,
+                PageSnapshotCache.configurationKey(activity.getResources().getConfiguration()),
+                newBitmap());
+        viewSwitcher.setPageSnapshotCache(mCache);
+        viewSwitcher.setDeferInitialPopulate(true);
+        ShadowLooper.pauseMainLooper();
+        viewSwitcher.setAdapter(adapter);
+        layout(viewSwitcher);
+        final View snapshot = viewSwitcher.getChildAt(0);
+        assertTrue(snapshot instanceof PageSnapshotCache.SnapshotView);
+
+        // The deferred populate adds the page.
+        ShadowLooper.runUiThreadTasks();
+        layout(viewSwitcher);
+        assertEquals(1, adapter.mInstantiateCount);
+        assertSame(viewSwitcher, snapshot.getParent());
+
+        viewSwitcher.draw(new Canvas(newBitmap()));
+        ShadowLooper.runUiThreadTasks();
+        ShadowLooper.unPauseMainLooper();
+
+        assertNull(snapshot.getParent());
+    }
+
+    private static Bitmap newBitmap() {
+        return Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    private static void awaitIdle(PageWorkScheduler scheduler) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (scheduler.getQueueDepth() > 0 || scheduler.getRunningCount() > 0) {
+            assertTrue("Scheduler still busy", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
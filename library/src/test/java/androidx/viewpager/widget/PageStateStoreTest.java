@@ -0,0 +1,94 @@
+package androidx.viewpager.widget;
+
+import android.os.Bundle;
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PageStateStoreTest {
+    private static final int COUNT = 100;
+
+    @Test
+    public void snapshotIsNotChangedByItsSource() {
+        final PageStateStore store = newStore();
+        final Bundle first = new Bundle();
+        final PageStateStore snapshot = store.snapshot();
+
+        store.put(0, first);
+        store.put(1, null);
+        store.put(COUNT, new Bundle());
+
+        assertEquals(COUNT, store.size());
+        assertSame(first, store.get(0));
+        assertNull(store.get(1));
+        assertEquals(COUNT, snapshot.size());
+        assertSame(snapshot.get(2), store.get(2));
+        assertEquals(1, ((Bundle) snapshot.get(1)).getInt("id"));
+        assertEquals(0, ((Bundle) snapshot.get(0)).getInt("id"));
+        assertNull(snapshot.get(COUNT));
+    }
+
+    @Test
+    public void sourceIsNotChangedByItsSnapshot() {
+        final PageStateStore store = newStore();
+        final PageStateStore snapshot = store.snapshot();
+
+        snapshot.put(5, null);
+        snapshot.retainAll(new long[] {1, 2, 3});
+
+        assertEquals(2, snapshot.size());
+        assertNull(snapshot.get(4));
+        assertEquals(COUNT, store.size());
+        assertEquals(5, ((Bundle) store.get(5)).getInt("id"));
+    }
+
+    @Test
+    public void retainAllKeepsOnlyGivenIds() {
+        final PageStateStore store = newStore();
+
+        store.retainAll(new long[] {-1, 10, 20, 30});
+
+        assertEquals(3, store.size());
+        assertEquals(20, ((Bundle) store.get(20)).getInt("id"));
+        assertNull(store.get(11));
+    }
+
+    @Test
+    public void parcelledStoreHasAllStates() {
+        final PageStateStore store = newStore();
+        final Parcel parcel = Parcel.obtain();
+        final PageStateStore read;
+        try {
+            store.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            read = PageStateStore.readFromParcel(parcel, parcel.readInt(),
+                    PageStateStore.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+
+        assertEquals(COUNT, read.size());
+        for (int id = 0; id < COUNT; id++) {
+            assertEquals(id, ((Bundle) read.get(id)).getInt("id"));
+        }
+    }
+
+    private static PageStateStore newStore() {
+        final PageStateStore store = new PageStateStore();
+        for (int id = 0; id < COUNT; id++) {
+            final Bundle state = new Bundle();
+            state.putInt("id", id);
+            store.put(id, state);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,146 @@
+package androidx.viewpager.widget;
+
+import androidx.annotation.NonNull;
+
+import com.fiberthemax.viewswitcher.PageUsagePredictor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PageUsagePredictorTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private PageUsagePredictor mPredictor;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "usage");
+        mPredictor = new PageUsagePredictor(mFile, 3);
+    }
+
+    @Test
+    public void mostFrequentTransitionsArePredictedFirst() {
+        record(1, 3, 1);
+        record(1, 2, 3);
+
+        assertArrayEquals(new long[] {2, 3}, predict(1, 2));
+        assertArrayEquals(new long[] {2}, predict(1, 1));
+        assertEquals(0, predict(5, 2).length);
+    }
+
+    @Test
+    public void leastVisitedIdIsForgottenWhenFull() {
+        record(1, 2, 2);
+        record(1, 3, 1);
+
+        // 1 is the page switched from, so 3 goes even though 1 was visited less.
+        record(1, 4, 1);
+
+        assertArrayEquals(new long[] {2, 4}, predict(1, 3));
+    }
+
+    @Test
+    public void savedUsageIsLoadedBack() {
+        record(1, 2, 3);
+        record(1, 3, 1);
+        record(2, 3, 1);
+        mPredictor.save();
+
+        final PageUsagePredictor loaded = new PageUsagePredictor(mFile, 3);
+        loaded.load();
+
+        final long[] ids = new long[3];
+        assertEquals(2, loaded.predict(1, ids));
+        assertArrayEquals(new long[] {2, 3}, Arrays.copyOf(ids, 2));
+        assertEquals(1, loaded.predict(2, ids));
+        assertEquals(3, ids[0]);
+    }
+
+    @Test
+    public void unreadableFileLeavesPredictorEmptyAndUsable() throws IOException {
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(new byte[] {1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        mPredictor.load();
+
+        assertEquals(0, predict(1, 2).length);
+        record(1, 2, 1);
+        assertArrayEquals(new long[] {2}, predict(1, 2));
+    }
+
+    @Test
+    public void attachedPredictorReportsPositionsAfterEachSwitch() {
+        final ViewSwitcher viewSwitcher = attachViewSwitcher();
+        final TestPagerAdapter adapter = new TestPagerAdapter("a", "b", "c");
+        viewSwitcher.setAdapter(adapter);
+        layout(viewSwitcher);
+        final List<List<Integer>> predictions = new ArrayList<>();
+        mPredictor.attach(viewSwitcher, new PageUsagePredictor.OnPredictionListener() {
+            @Override
+            public void onPrediction(@NonNull ViewSwitcher viewSwitcher,
+                                     @NonNull int[] positions, int count) {
+                final List<Integer> prediction = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    prediction.add(positions[i]);
+                }
+                predictions.add(prediction);
+            }
+        });
+
+        viewSwitcher.setCurrentItem(2);
+        viewSwitcher.setCurrentItem(0);
+        // Moved, it is still predicted at its new position.
+        adapter.setItems("b", "c", "a");
+        layout(viewSwitcher);
+        mPredictor.detach();
+        viewSwitcher.setCurrentItem(0);
+
+        assertEquals(Arrays.asList(Collections.<Integer>emptyList(),
+                Collections.<Integer>emptyList(), Collections.singletonList(2)),
+                predictions.subList(0, 3));
+        assertArrayEquals(new int[] {1}, predictPositions(viewSwitcher, 2));
+    }
+
+    private void record(long fromId, long toId, int times) {
+        for (int i = 0; i < times; i++) {
+            mPredictor.recordTransition(fromId, toId);
+        }
+    }
+
+    private long[] predict(long fromId, int max) {
+        final long[] ids = new long[max];
+        return Arrays.copyOf(ids, mPredictor.predict(fromId, ids));
+    }
+
+    private int[] predictPositions(ViewSwitcher viewSwitcher, int fromPosition) {
+        final int[] positions = new int[2];
+        return Arrays.copyOf(positions,
+                mPredictor.predictPositions(viewSwitcher, fromPosition, positions));
+    }
+}
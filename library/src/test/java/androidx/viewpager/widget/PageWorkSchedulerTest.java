@@ -0,0 +1,222 @@
+package androidx.viewpager.widget;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static androidx.viewpager.widget.PageWorkScheduler.PRIORITY_CURRENT;
+import static androidx.viewpager.widget.PageWorkScheduler.PRIORITY_HOUSEKEEPING;
+import static androidx.viewpager.widget.PageWorkScheduler.PRIORITY_PRESSED;
+import static androidx.viewpager.widget.PageWorkScheduler.PRIORITY_SPECULATIVE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PageWorkSchedulerTest {
+    private static final long TIMEOUT = 5; // s
+    private static final Object OWNER = new Object();
+    private static final Object OTHER_OWNER = new Object();
+
+    private final List<String> mOrder = Collections.synchronizedList(new ArrayList<String>());
+    private final Semaphore mFinished = new Semaphore(0);
+
+    @Test
+    public void queuedWorkRunsInPriorityThenSubmissionOrder() throws InterruptedException {
+        final PageWorkScheduler scheduler = new PageWorkScheduler(1);
+        final CountDownLatch release = blockWorker(scheduler);
+        scheduler.submit(OWNER, 0, PRIORITY_HOUSEKEEPING, record("housekeeping"));
+        scheduler.submit(OWNER, 1, PRIORITY_SPECULATIVE, record("speculative 1"));
+        scheduler.submit(OWNER, 2, PRIORITY_CURRENT, record("current"));
+        scheduler.submit(OWNER, 3, PRIORITY_SPECULATIVE, record("speculative 2"));
+        scheduler.submit(OWNER, 4, PRIORITY_PRESSED, record("pressed"));
+        assertEquals(2, scheduler.getQueueDepth(PRIORITY_SPECULATIVE));
+
+        release.countDown();
+        awaitFinished(5);
+
+        assertEquals(Arrays.asList("current", "pressed", "speculative 1", "speculative 2",
+                "housekeeping"), mOrder);
+    }
+
+    @Test
+    public void cancelRemovesQueuedWorkOfOwnerAndPosition() throws InterruptedException {
+        final PageWorkScheduler scheduler = new PageWorkScheduler(1);
+        final CountDownLatch release = blockWorker(scheduler);
+        scheduler.submit(OWNER, 0, PRIORITY_SPECULATIVE, record("owner 0"));
+        scheduler.submit(OWNER, 1, PRIORITY_SPECULATIVE, record("owner 1"));
+        final PageWorkScheduler.Task task =
+                scheduler.submit(OWNER, 2, PRIORITY_SPECULATIVE, record("owner 2"));
+        scheduler.submit(OTHER_OWNER, 0, PRIORITY_SPECULATIVE, record("other 0"));
+
+        assertEquals(1, scheduler.cancel(OWNER, 1));
+        assertTrue(task.cancel());
+        assertFalse(task.cancel());
+        assertEquals(1, scheduler.cancel(OTHER_OWNER));
+        assertEquals(1, scheduler.getQueueDepth());
+        release.countDown();
+        awaitFinished(1);
+
+        assertEquals(Collections.singletonList("owner 0"), mOrder);
+    }
+
+    @Test
+    public void promotedWorkRunsAheadOfItsNewPriorityClass() throws InterruptedException {
+        final PageWorkScheduler scheduler = new PageWorkScheduler(1);
+        final CountDownLatch release = blockWorker(scheduler);
+        scheduler.submit(OTHER_OWNER, 0, PRIORITY_PRESSED, record("pressed"));
+        final PageWorkScheduler.Task task =
+                scheduler.submit(OWNER, 1, PRIORITY_HOUSEKEEPING, record("promoted task"));
+        scheduler.submit(OWNER, 0, PRIORITY_SPECULATIVE, record("promoted position"));
+
+        scheduler.promote(OWNER, 0, PRIORITY_CURRENT);
+        task.promote(PRIORITY_PRESSED);
+        // Lowering is ignored.
+        task.promote(PRIORITY_HOUSEKEEPING);
+        assertEquals(PRIORITY_PRESSED, task.getPriority());
+        release.countDown();
+        awaitFinished(3);
+
+        assertEquals(Arrays.asList("promoted position", "pressed", "promoted task"), mOrder);
+    }
+
+    @Test
+    public void runsNoMoreThanMaxConcurrencyTasksAtOnce() throws InterruptedException {
+        final PageWorkScheduler scheduler = new PageWorkScheduler(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            scheduler.submit(OWNER, i, PRIORITY_SPECULATIVE, new Runnable() {
+                @Override
+                public void run() {
+                    final int now = running.incrementAndGet();
+                    int max;
+                    while (now > (max = maxRunning.get())
+                            && !maxRunning.compareAndSet(max, now)) {
+                        // Retry.
+                    }
+                    sleep(20);
+                    running.decrementAndGet();
+                    mFinished.release();
+                }
+            });
+        }
+
+        awaitFinished(6);
+
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void workSubmittedBackToBackToAnIdleWorkerRunsConcurrently()
+            throws InterruptedException {
+        final PageWorkScheduler scheduler = new PageWorkScheduler(2);
+        scheduler.submit(OWNER, 0, PRIORITY_CURRENT, record("warm up"));
+        awaitFinished(1);
+        // Let the worker go back to waiting for work.
+        while (scheduler.getRunningCount() > 0) {
+            sleep(10);
+        }
+        sleep(50);
+
+        final CountDownLatch secondRan = new CountDownLatch(1);
+        final boolean[] sawSecond = new boolean[1];
+        scheduler.submit(OWNER, 1, PRIORITY_CURRENT, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sawSecond[0] = secondRan.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                mFinished.release();
+            }
+        });
+        scheduler.submit(OWNER, 2, PRIORITY_CURRENT, new Runnable() {
+            @Override
+            public void run() {
+                secondRan.countDown();
+                mFinished.release();
+            }
+        });
+        awaitFinished(2);
+
+        assertTrue("The second task waited behind the first", sawSecond[0]);
+    }
+
+    @Test
+    public void waitStatsTrackTimeSpentQueued() throws InterruptedException {
+        final PageWorkScheduler scheduler = new PageWorkScheduler(1);
+        final CountDownLatch release = blockWorker(scheduler);
+        scheduler.resetStats();
+        scheduler.submit(OWNER, 0, PRIORITY_CURRENT, record("current"));
+        scheduler.submit(OWNER, 1, PRIORITY_CURRENT, record("current"));
+
+        ShadowLooper.idleMainLooper(100, TimeUnit.MILLISECONDS);
+        release.countDown();
+        awaitFinished(2);
+
+        assertTrue(scheduler.getMaxWaitMillis(PRIORITY_CURRENT) >= 100);
+        assertTrue(scheduler.getAverageWaitMillis(PRIORITY_CURRENT) >= 100);
+        assertEquals(0, scheduler.getMaxWaitMillis(PRIORITY_HOUSEKEEPING));
+        scheduler.resetStats();
+        assertEquals(0, scheduler.getMaxWaitMillis(PRIORITY_CURRENT));
+        assertEquals(0, scheduler.getAverageWaitMillis(PRIORITY_CURRENT));
+    }
+
+    /**
+     * Keeps the scheduler's only worker busy until the returned latch is released, so that work
+     * submitted in the meantime stays queued.
+     */
+    private CountDownLatch blockWorker(PageWorkScheduler scheduler) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(OWNER, -1, PRIORITY_CURRENT, new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mOrder.add(name);
+                mFinished.release();
+            }
+        };
+    }
+
+    private void awaitFinished(int count) throws InterruptedException {
+        assertTrue(mFinished.tryAcquire(count, TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package androidx.viewpager.widget;
+
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link TestPagerAdapter} that records the positions whose data is preloaded.
+ */
+class PreloadingPagerAdapter extends TestPagerAdapter implements ViewSwitcher.PageDataPreloader {
+    private static final long TIMEOUT = 5; // s
+
+    final List<Integer> mPreloaded = Collections.synchronizedList(new ArrayList<Integer>());
+    private final Semaphore mPreloads = new Semaphore(0);
+
+    PreloadingPagerAdapter(String... items) {
+        super(items);
+    }
+
+    @Nullable
+    @Override
+    public Object onPreloadData(int position, @NonNull CancellationSignal signal) {
+        mPreloaded.add(position);
+        mPreloads.release();
+        return null;
+    }
+
+    @Override
+    public void onBindPreloadedData(@NonNull ViewGroup container, int position,
+                                    @NonNull Object object, @Nullable Object data) {
+    }
+
+    /**
+     * Waits for the given number of preloads to have run.
+     */
+    void awaitPreloads(int count) throws InterruptedException {
+        assertTrue(mPreloads.tryAcquire(count, TIMEOUT, TimeUnit.SECONDS));
+    }
+}
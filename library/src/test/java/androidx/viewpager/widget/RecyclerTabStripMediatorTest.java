@@ -0,0 +1,138 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.fiberthemax.viewswitcher.RecyclerTabStripMediator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.SIZE;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RecyclerTabStripMediatorTest {
+    // Wide enough for all tabs.
+    private static final int STRIP_WIDTH = 10 * SIZE;
+
+    private ViewSwitcher mViewSwitcher;
+    private RecyclerView mRecyclerView;
+    private PreloadingPagerAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        mViewSwitcher = attachViewSwitcher(activity);
+        mRecyclerView = new RecyclerView(activity);
+        activity.addContentView(mRecyclerView, new ViewGroup.LayoutParams(STRIP_WIDTH, SIZE));
+        mAdapter = new PreloadingPagerAdapter("a", "b", "c");
+        mViewSwitcher.setAdapter(mAdapter);
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void pressedTabPreloadsItsData() throws InterruptedException {
+        new RecyclerTabStripMediator(mRecyclerView, mViewSwitcher).attach();
+        layoutStrip();
+
+        final View tabView = mRecyclerView.getChildAt(1);
+        final MotionEvent event = MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN,
+                tabView.getLeft() + 1, tabView.getTop() + 1, 0);
+        mRecyclerView.dispatchTouchEvent(event);
+        event.recycle();
+        mAdapter.awaitPreloads(1);
+
+        assertEquals(Collections.singletonList(1), mAdapter.mPreloaded);
+    }
+
+    @Test
+    public void focusedTabPreloadsItsData() throws InterruptedException {
+        new RecyclerTabStripMediator(mRecyclerView, mViewSwitcher).attach();
+        layoutStrip();
+
+        final View tabView = mRecyclerView.getChildAt(2);
+        tabView.getOnFocusChangeListener().onFocusChange(tabView, true);
+        mAdapter.awaitPreloads(1);
+
+        assertEquals(Collections.singletonList(2), mAdapter.mPreloaded);
+    }
+
+    @Test
+    public void selectionRebindsOnlyPreviousAndNewTab() {
+        final RecordingStrategy strategy = new RecordingStrategy();
+        new RecyclerTabStripMediator(mRecyclerView, mViewSwitcher, strategy).attach();
+        layoutStrip();
+        assertEquals(Arrays.asList("0 selected", "1", "2"), strategy.mBound);
+        strategy.mBound.clear();
+
+        mViewSwitcher.setCurrentItem(2);
+        layoutStrip();
+
+        assertEquals(Arrays.asList("0", "2 selected"), strategy.mBound);
+        assertEquals(3, mRecyclerView.getChildCount());
+    }
+
+    @Test
+    public void stripKeepsItsCountUntilViewSwitcherHasProcessedTheChange() {
+        mViewSwitcher.setCoalesceDataSetChanges(true);
+        new RecyclerTabStripMediator(mRecyclerView, mViewSwitcher).attach();
+        layoutStrip();
+
+        ShadowLooper.pauseMainLooper();
+        mAdapter.setItems("a", "b", "c", "d");
+        // The RecyclerView must not see a count it was not notified of.
+        layoutStrip();
+        assertEquals(3, mRecyclerView.getAdapter().getItemCount());
+        assertEquals(3, mRecyclerView.getChildCount());
+
+        layout(mViewSwitcher);
+        layoutStrip();
+        ShadowLooper.unPauseMainLooper();
+
+        assertEquals(4, mRecyclerView.getAdapter().getItemCount());
+        assertEquals(4, mRecyclerView.getChildCount());
+    }
+
+    private void layoutStrip() {
+        mRecyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(STRIP_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, STRIP_WIDTH, SIZE);
+    }
+
+    private static class RecordingStrategy implements RecyclerTabStripMediator.TabViewStrategy {
+        final List<String> mBound = new ArrayList<>();
+
+        @NonNull
+        @Override
+        public View onCreateTabView(@NonNull ViewGroup parent) {
+            final View tabView = new View(parent.getContext());
+            tabView.setLayoutParams(new RecyclerView.LayoutParams(SIZE, SIZE));
+            return tabView;
+        }
+
+        @Override
+        public void onBindTabView(@NonNull View tabView, int position, boolean selected) {
+            mBound.add(selected ? position + " selected" : String.valueOf(position));
+        }
+    }
+}
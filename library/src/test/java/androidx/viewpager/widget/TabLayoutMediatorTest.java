@@ -0,0 +1,241 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fiberthemax.viewswitcher.TabLayoutMediator;
+import com.google.android.material.R;
+import com.google.android.material.tabs.TabLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TabLayoutMediatorTest {
+    private ViewSwitcher mViewSwitcher;
+    private TabLayout mTabLayout;
+    private TestPagerAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        activity.setTheme(R.style.Theme_MaterialComponents_Light);
+        mViewSwitcher = attachViewSwitcher(activity);
+        mTabLayout = new TabLayout(activity);
+        mAdapter = new TestPagerAdapter("a", "b");
+        mViewSwitcher.setAdapter(mAdapter);
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void asyncConfigurationsAreLoadedInOneJobAndApplied() {
+        final QueueExecutor executor = new QueueExecutor();
+        final TitleStrategy strategy = new TitleStrategy();
+        new TabLayoutMediator(mTabLayout, mViewSwitcher, true, strategy, executor).attach();
+        assertEquals("...", mTabLayout.getTabAt(1).getText());
+
+        assertEquals(1, executor.mQueue.size());
+        executor.runAll();
+
+        assertEquals(Arrays.asList(0, 1), strategy.mLoaded);
+        assertEquals("A", mTabLayout.getTabAt(0).getText());
+        assertEquals("B", mTabLayout.getTabAt(1).getText());
+    }
+
+    @Test
+    public void asyncConfigurationsOfRecreatedTabsAreDiscarded() {
+        final QueueExecutor executor = new QueueExecutor();
+        final TitleStrategy strategy = new TitleStrategy();
+        new TabLayoutMediator(mTabLayout, mViewSwitcher, true, strategy, executor).attach();
+
+        // Loaded, but the tabs are recreated before the results reach the main thread.
+        ShadowLooper.pauseMainLooper();
+        executor.runAll();
+        mAdapter.setItems("c", "d");
+        layout(mViewSwitcher);
+        ShadowLooper.runUiThreadTasks();
+        ShadowLooper.unPauseMainLooper();
+        assertEquals("...", mTabLayout.getTabAt(0).getText());
+        assertEquals(Collections.<String>emptyList(), strategy.mApplied);
+
+        // Queued for tabs that are recreated before it runs, nothing is loaded.
+        strategy.mLoaded.clear();
+        mAdapter.setItems("e", "f");
+        layout(mViewSwitcher);
+        assertEquals(2, executor.mQueue.size());
+        executor.runAll();
+
+        assertEquals(Arrays.asList(0, 1), strategy.mLoaded);
+        assertEquals(Arrays.asList("E", "F"), strategy.mApplied);
+    }
+
+    @Test
+    public void tabsAreRebuiltOnceAfterViewSwitcherProcessedChanges() {
+        mViewSwitcher.setCoalesceDataSetChanges(true);
+        final List<Integer> configured = new ArrayList<>();
+        new TabLayoutMediator(mTabLayout, mViewSwitcher,
+                new TabLayoutMediator.TabConfigurationStrategy() {
+                    @Override
+                    public void onConfigureTab(@NonNull TabLayout.Tab tab, int position) {
+                        configured.add(position);
+                        tab.setText(mAdapter.getPageTitle(position));
+                    }
+                }).attach();
+        configured.clear();
+
+        ShadowLooper.pauseMainLooper();
+        mAdapter.setItems("c", "a", "b");
+        mAdapter.setItems("c", "b", "a");
+        assertEquals(Collections.<Integer>emptyList(), configured);
+        layout(mViewSwitcher);
+        ShadowLooper.unPauseMainLooper();
+
+        assertEquals(Arrays.asList(0, 1, 2), configured);
+        assertEquals("a", mTabLayout.getTabAt(2).getText());
+        // The current item followed a to its new position.
+        assertEquals(2, mViewSwitcher.getCurrentItem());
+        assertEquals(2, mTabLayout.getSelectedTabPosition());
+    }
+
+    @Test
+    public void selectionIsKeptInSyncWithoutAutoRefresh() {
+        new TabLayoutMediator(mTabLayout, mViewSwitcher, false,
+                (TabLayoutMediator.TabConfigurationStrategy) null).attach();
+
+        mViewSwitcher.setCurrentItem(1);
+        assertEquals(1, mTabLayout.getSelectedTabPosition());
+
+        mTabLayout.getTabAt(0).select();
+        assertEquals(0, mViewSwitcher.getCurrentItem());
+    }
+
+    @Test
+    public void pressedTabPreloadsItsDataAfterAppTouchListener() throws InterruptedException {
+        final PreloadingPagerAdapter adapter = new PreloadingPagerAdapter("a", "b", "c");
+        mViewSwitcher.setAdapter(adapter);
+        layout(mViewSwitcher);
+        final TabLayoutMediator mediator = new TabLayoutMediator(mTabLayout, mViewSwitcher);
+        mediator.attach();
+        final List<View> touched = new ArrayList<>();
+        mediator.setOnTabTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                touched.add(v);
+                // Consumed for b.
+                return v == mTabLayout.getTabAt(1).view;
+            }
+        });
+
+        pressDown(mTabLayout.getTabAt(1).view);
+        pressDown(mTabLayout.getTabAt(2).view);
+        adapter.awaitPreloads(1);
+
+        assertEquals(Arrays.asList(mTabLayout.getTabAt(1).view, mTabLayout.getTabAt(2).view),
+                touched);
+        assertEquals(Collections.singletonList(2), adapter.mPreloaded);
+    }
+
+    @Test
+    public void focusedTabPreloadsItsDataAndChainsFocusListener()
+            throws InterruptedException {
+        final PreloadingPagerAdapter adapter = new PreloadingPagerAdapter("a", "b");
+        mViewSwitcher.setAdapter(adapter);
+        layout(mViewSwitcher);
+        final List<Boolean> focusChanges = new ArrayList<>();
+        final View.OnFocusChangeListener appListener = new View.OnFocusChangeListener() {
+            @Override
+            public void onFocusChange(View v, boolean hasFocus) {
+                focusChanges.add(hasFocus);
+            }
+        };
+        final TabLayoutMediator mediator = new TabLayoutMediator(mTabLayout, mViewSwitcher,
+                new TabLayoutMediator.TabConfigurationStrategy() {
+                    @Override
+                    public void onConfigureTab(@NonNull TabLayout.Tab tab, int position) {
+                        tab.view.setOnFocusChangeListener(appListener);
+                    }
+                });
+        mediator.attach();
+
+        final View tabView = mTabLayout.getTabAt(1).view;
+        tabView.getOnFocusChangeListener().onFocusChange(tabView, true);
+        adapter.awaitPreloads(1);
+
+        assertEquals(Collections.singletonList(true), focusChanges);
+        assertEquals(Collections.singletonList(1), adapter.mPreloaded);
+
+        mediator.detach();
+
+        assertSame(appListener, tabView.getOnFocusChangeListener());
+    }
+
+    private static void pressDown(View view) {
+        final MotionEvent event = MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 1, 1, 0);
+        view.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private class TitleStrategy
+            implements TabLayoutMediator.AsyncTabConfigurationStrategy<String> {
+        final List<Integer> mLoaded = new ArrayList<>();
+        final List<String> mApplied = new ArrayList<>();
+
+        @Override
+        public void onConfigurePlaceholderTab(@NonNull TabLayout.Tab tab, int position) {
+            tab.setText("...");
+        }
+
+        @Nullable
+        @Override
+        public String onLoadTabConfiguration(int position) {
+            mLoaded.add(position);
+            return mAdapter.getPageTitle(position).toString().toUpperCase(Locale.ROOT);
+        }
+
+        @Override
+        public void onApplyTabConfiguration(@NonNull TabLayout.Tab tab, int position,
+                                            @NonNull String configuration) {
+            mApplied.add(configuration);
+            tab.setText(configuration);
+        }
+    }
+
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> mQueue = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runAll() {
+            final List<Runnable> queue = new ArrayList<>(mQueue);
+            mQueue.clear();
+            for (Runnable command : queue) {
+                command.run();
+            }
+        }
+    }
+}
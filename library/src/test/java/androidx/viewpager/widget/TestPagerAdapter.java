@@ -0,0 +1,83 @@
+package androidx.viewpager.widget;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A view based adapter whose pages are plain views tagged with their item, so that pages of
+ * removed items report {@link PagerAdapter#POSITION_NONE}.
+ */
+class TestPagerAdapter extends PagerAdapter implements ViewSwitcher.StableIdProvider {
+    private List<String> mItems;
+    int mInstantiateCount;
+    int mDestroyCount;
+
+    TestPagerAdapter(String... items) {
+        this(Arrays.asList(items));
+    }
+
+    TestPagerAdapter(List<String> items) {
+        mItems = new ArrayList<>(items);
+    }
+
+    void setItems(String... items) {
+        setItems(Arrays.asList(items));
+    }
+
+    void setItems(List<String> items) {
+        mItems = new ArrayList<>(items);
+        notifyDataSetChanged();
+    }
+
+    List<String> getItems() {
+        return mItems;
+    }
+
+    @Override
+    public int getCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).hashCode();
+    }
+
+    @Override
+    public CharSequence getPageTitle(int position) {
+        return mItems.get(position);
+    }
+
+    @NonNull
+    @Override
+    public Object instantiateItem(@NonNull ViewGroup container, int position) {
+        final View page = new View(container.getContext());
+        page.setTag(mItems.get(position));
+        container.addView(page);
+        mInstantiateCount++;
+        return page;
+    }
+
+    @Override
+    public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
+        container.removeView((View) object);
+        mDestroyCount++;
+    }
+
+    @Override
+    public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+        return view == object;
+    }
+
+    @Override
+    public int getItemPosition(@NonNull Object object) {
+        final int position = mItems.indexOf(((View) object).getTag());
+        return position >= 0 ? position : POSITION_NONE;
+    }
+}
@@ -0,0 +1,170 @@
+package androidx.viewpager.widget;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+
+import com.fiberthemax.viewswitcher.ViewReleasingFragmentPagerAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewReleasingFragmentPagerAdapterTest {
+    private ViewSwitcher mViewSwitcher;
+    private FragmentManager mFragmentManager;
+    private CounterPagerAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        final FragmentActivity activity =
+                Robolectric.buildActivity(FragmentActivity.class).setup().get();
+        mViewSwitcher = attachViewSwitcher(activity);
+        mFragmentManager = activity.getSupportFragmentManager();
+        mAdapter = new CounterPagerAdapter(mFragmentManager);
+        mAdapter.setMaxDetachedPages(1);
+        mViewSwitcher.setAdapter(mAdapter);
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void detachedFragmentWithinLimitIsAttachedAgain() {
+        final CounterFragment first = mAdapter.mCreated.get(0);
+
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.setCurrentItem(0);
+
+        assertEquals(2, mAdapter.mCreated.size());
+        assertSame(first, mAdapter.mCreated.get(0));
+        assertNotNull(first.getView());
+    }
+
+    @Test
+    public void hiddenPageReleasesItsViewAndGetsItsViewStateBack() {
+        final CounterFragment first = mAdapter.mCreated.get(0);
+        final CheckBox firstView = (CheckBox) first.getView();
+        firstView.setChecked(true);
+
+        mViewSwitcher.setCurrentItem(1);
+        assertNull(first.getView());
+        assertSame(first, findFragment(0));
+        mViewSwitcher.setCurrentItem(0);
+
+        final CheckBox restoredView = (CheckBox) first.getView();
+        assertNotSame(firstView, restoredView);
+        assertTrue(restoredView.isChecked());
+    }
+
+    @Test
+    public void detachedFragmentsStayWithinLimit() {
+        final int[] visits = {1, 2, 1, 0, 2, 0, 1};
+        for (int position : visits) {
+            mViewSwitcher.setCurrentItem(position);
+
+            int detached = 0;
+            for (int i = 0; i < mAdapter.getCount(); i++) {
+                if (i != position && findFragment(i) != null) {
+                    detached++;
+                }
+            }
+            assertTrue("Detached " + detached + " after showing " + position, detached <= 1);
+        }
+    }
+
+    @Test
+    public void fragmentBeyondLimitIsRemovedAndRecreatedFromItsState() {
+        final CounterFragment first = mAdapter.mCreated.get(0);
+        first.mCount = 7;
+
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.setCurrentItem(2);
+        assertFalse(first.isAdded());
+        mViewSwitcher.setCurrentItem(0);
+
+        final CounterFragment recreated = mAdapter.mCreated.get(3);
+        assertNotSame(first, recreated);
+        assertEquals(7, recreated.mCount);
+    }
+
+    @Nullable
+    private Fragment findFragment(int position) {
+        return mFragmentManager.findFragmentByTag(
+                "android:switcher:" + mViewSwitcher.getId() + ":" + mAdapter.getItemId(position));
+    }
+
+    public static class CounterFragment extends Fragment {
+        private static final String KEY_COUNT = "count";
+        private static final int VIEW_ID = 1;
+
+        int mCount;
+
+        @Override
+        public void onCreate(@Nullable Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            if (savedInstanceState != null) {
+                mCount = savedInstanceState.getInt(KEY_COUNT, 0);
+            }
+        }
+
+        @Override
+        public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                                 @Nullable Bundle savedInstanceState) {
+            final CheckBox view = new CheckBox(requireContext());
+            view.setId(VIEW_ID);
+            return view;
+        }
+
+        @Override
+        public void onSaveInstanceState(@NonNull Bundle outState) {
+            super.onSaveInstanceState(outState);
+            outState.putInt(KEY_COUNT, mCount);
+        }
+    }
+
+    private static class CounterPagerAdapter extends ViewReleasingFragmentPagerAdapter {
+        final List<CounterFragment> mCreated = new ArrayList<>();
+
+        CounterPagerAdapter(@NonNull FragmentManager fragmentManager) {
+            super(fragmentManager);
+        }
+
+        @NonNull
+        @Override
+        public Fragment getItem(int position) {
+            final CounterFragment fragment = new CounterFragment();
+            mCreated.add(fragment);
+            return fragment;
+        }
+
+        @Override
+        public int getCount() {
+            return 3;
+        }
+    }
+}
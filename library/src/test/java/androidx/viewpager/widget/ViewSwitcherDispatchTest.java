@@ -0,0 +1,80 @@
+package androidx.viewpager.widget;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewSwitcherDispatchTest {
+
+    private ViewSwitcher mViewSwitcher;
+
+    @Before
+    public void setUp() {
+        mViewSwitcher = attachViewSwitcher();
+        mViewSwitcher.setAdapter(new TestPagerAdapter("a", "b", "c", "d"));
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void immediateListenerIsCalledForEverySwitch() {
+        final RecordingListener listener = new RecordingListener();
+        mViewSwitcher.addOnPageChangeListener(listener, ViewSwitcher.DISPATCH_IMMEDIATE);
+
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.setCurrentItem(2);
+
+        assertEquals(Arrays.asList(1, 2), listener.mPositions);
+    }
+
+    @Test
+    public void afterFrameListenerGetsLatestPositionOnce() {
+        final RecordingListener listener = new RecordingListener();
+        mViewSwitcher.addOnPageChangeListener(listener, ViewSwitcher.DISPATCH_AFTER_FRAME);
+
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.setCurrentItem(2);
+        mViewSwitcher.setCurrentItem(3);
+        assertEquals(Collections.<Integer>emptyList(), listener.mPositions);
+
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonList(3), listener.mPositions);
+    }
+
+    @Test
+    public void removedDeferredListenerIsNotCalled() {
+        final RecordingListener listener = new RecordingListener();
+        mViewSwitcher.addOnPageChangeListener(listener, ViewSwitcher.DISPATCH_AFTER_FRAME);
+
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.removeOnPageChangeListener(listener);
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+
+        assertEquals(Collections.<Integer>emptyList(), listener.mPositions);
+    }
+
+    private static class RecordingListener implements ViewSwitcher.OnPageChangeListener {
+        final List<Integer> mPositions = new ArrayList<>();
+
+        @Override
+        public void onPageSelected(int position) {
+            mPositions.add(position);
+        }
+    }
+}
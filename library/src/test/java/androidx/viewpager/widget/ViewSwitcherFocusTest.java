@@ -0,0 +1,132 @@
+package androidx.viewpager.widget;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewSwitcherFocusTest {
+    private static final int FIRST_ID = 10;
+    private static final int SECOND_ID = 11;
+
+    private ViewSwitcher mViewSwitcher;
+
+    @Before
+    public void setUp() {
+        mViewSwitcher = attachViewSwitcher();
+        mViewSwitcher.setAdapter(new FocusablePagerAdapter(false));
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void focusStaysWithViewSwitcherForPageNeverFocused() {
+        currentPage().findViewById(FIRST_ID).requestFocus();
+
+        mViewSwitcher.setCurrentItem(1);
+        layout(mViewSwitcher);
+
+        // No search for a focusable in the new page, the next key press moves focus into it.
+        assertTrue(mViewSwitcher.isFocused());
+    }
+
+    @Test
+    public void focusIsRestoredWhenPageComesBack() {
+        currentPage().findViewById(SECOND_ID).requestFocus();
+
+        mViewSwitcher.setCurrentItem(1);
+        layout(mViewSwitcher);
+        mViewSwitcher.setCurrentItem(0);
+        layout(mViewSwitcher);
+
+        assertEquals(SECOND_ID, mViewSwitcher.findFocus().getId());
+    }
+
+    @Test
+    public void focusReturnsToSameViewOfReusedPage() {
+        mViewSwitcher.setAdapter(new FocusablePagerAdapter(true));
+        layout(mViewSwitcher);
+        // Without an id, only the reference can find it again.
+        final View focused = ((ViewGroup) currentPage()).getChildAt(1);
+        focused.requestFocus();
+
+        mViewSwitcher.setCurrentItem(1);
+        layout(mViewSwitcher);
+        mViewSwitcher.setCurrentItem(0);
+        layout(mViewSwitcher);
+
+        assertSame(focused, mViewSwitcher.findFocus());
+    }
+
+    private View currentPage() {
+        return mViewSwitcher.getChildAt(0);
+    }
+
+    private static class FocusablePagerAdapter extends PagerAdapter {
+        private final boolean mReusePages;
+        private final SparseArray<View> mPages = new SparseArray<>();
+
+        /**
+         * @param reusePages True to keep the pages' views and give them to the ViewSwitcher
+         *                   again, without ids.
+         */
+        FocusablePagerAdapter(boolean reusePages) {
+            mReusePages = reusePages;
+        }
+
+        @Override
+        public int getCount() {
+            return 3;
+        }
+
+        @NonNull
+        @Override
+        public Object instantiateItem(@NonNull ViewGroup container, int position) {
+            View page = mReusePages ? mPages.get(position) : null;
+            if (page == null) {
+                final LinearLayout layout = new LinearLayout(container.getContext());
+                layout.addView(createFocusableView(layout, mReusePages ? View.NO_ID : FIRST_ID));
+                layout.addView(createFocusableView(layout, mReusePages ? View.NO_ID : SECOND_ID));
+                page = layout;
+                if (mReusePages) {
+                    mPages.put(position, page);
+                }
+            }
+            container.addView(page);
+            return page;
+        }
+
+        private static View createFocusableView(ViewGroup parent, int id) {
+            final View view = new View(parent.getContext());
+            view.setId(id);
+            view.setFocusable(true);
+            return view;
+        }
+
+        @Override
+        public void destroyItem(@NonNull ViewGroup container, int position,
+                                @NonNull Object object) {
+            container.removeView((View) object);
+        }
+
+        @Override
+        public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+            return view == object;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+
+import com.fiberthemax.viewswitcher.TabLayoutMediator;
+import com.google.android.material.R;
+import com.google.android.material.tabs.TabLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that every page destroyed by ViewSwitcher can be garbage collected.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewSwitcherLeakTest {
+    private static final int CYCLES = 20;
+
+    private Activity mActivity;
+    private ViewSwitcher mViewSwitcher;
+    private PageLeakTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+        mActivity.setTheme(R.style.Theme_MaterialComponents_Light);
+        mViewSwitcher = attachViewSwitcher(mActivity);
+        mTracker = new PageLeakTracker();
+        mViewSwitcher.setPageLeakTracker(mTracker);
+    }
+
+    @Test
+    public void switchingPagesReleasesDestroyedPages() {
+        final TestPagerAdapter adapter = new TestPagerAdapter("a", "b", "c", "d");
+        mViewSwitcher.setAdapter(adapter);
+        layout(mViewSwitcher);
+
+        for (int i = 1; i <= CYCLES; i++) {
+            mViewSwitcher.setCurrentItem(i % adapter.getCount());
+            layout(mViewSwitcher);
+        }
+
+        assertEquals(CYCLES, mTracker.getDestroyedCount());
+        assertEquals(1, mTracker.getLivePageCount());
+        assertNoRetainedPages(mViewSwitcher, adapter);
+    }
+
+    @Test
+    public void notifyDataSetChangedReleasesRemovedPages() {
+        final TestPagerAdapter adapter = new TestPagerAdapter("a0");
+        mViewSwitcher.setAdapter(adapter);
+        layout(mViewSwitcher);
+
+        for (int i = 1; i <= CYCLES; i++) {
+            adapter.setItems("a" + i, "b" + i);
+            layout(mViewSwitcher);
+        }
+
+        assertEquals(CYCLES, mTracker.getDestroyedCount());
+        assertEquals(1, mTracker.getLivePageCount());
+        assertNoRetainedPages(mViewSwitcher, adapter);
+    }
+
+    @Test
+    public void swappingAdaptersReleasesOldPages() {
+        for (int i = 0; i < CYCLES; i++) {
+            mViewSwitcher.setAdapter(new TestPagerAdapter("a" + i, "b" + i));
+            layout(mViewSwitcher);
+            mViewSwitcher.setCurrentItem(1);
+            layout(mViewSwitcher);
+        }
+
+        assertEquals(1, mTracker.getLivePageCount());
+        assertNoRetainedPages(mViewSwitcher, mViewSwitcher.getAdapter());
+    }
+
+    @Test
+    public void swappingAdaptersStopsObservingOldAdapter() {
+        final TestPagerAdapter oldAdapter = new TestPagerAdapter("a", "b");
+        mViewSwitcher.setAdapter(oldAdapter);
+        layout(mViewSwitcher);
+        mViewSwitcher.setAdapter(new TestPagerAdapter("c"));
+        layout(mViewSwitcher);
+
+        final int[] changes = new int[1];
+        mViewSwitcher.addOnDataSetChangeListener(new ViewSwitcher.OnDataSetChangeListener() {
+            @Override
+            public void onDataSetChanged(@NonNull ViewSwitcher viewSwitcher) {
+                changes[0]++;
+            }
+        });
+        oldAdapter.setItems("x");
+
+        assertEquals(0, changes[0]);
+    }
+
+    @Test
+    public void detachingMediatorReleasesPages() {
+        final TabLayout tabLayout = new TabLayout(mActivity);
+        for (int i = 0; i < CYCLES; i++) {
+            mViewSwitcher.setAdapter(new TestPagerAdapter("a" + i, "b" + i, "c" + i));
+            layout(mViewSwitcher);
+            final TabLayoutMediator mediator = new TabLayoutMediator(tabLayout, mViewSwitcher);
+            mediator.attach();
+            tabLayout.getTabAt(2).select();
+            layout(mViewSwitcher);
+            mediator.detach();
+        }
+
+        assertEquals(2, mViewSwitcher.getCurrentItem());
+        assertEquals(1, mTracker.getLivePageCount());
+        assertNoRetainedPages(mViewSwitcher, tabLayout, mViewSwitcher.getAdapter());
+    }
+
+    private void assertNoRetainedPages(Object... roots) {
+        final List<PageLeakTracker.RetainedPage> retained = mTracker.findRetainedPages(roots);
+        assertTrue("Destroyed pages were retained: " + retained, retained.isEmpty());
+    }
+}
@@ -0,0 +1,149 @@
+package androidx.viewpager.widget;
+
+import android.content.Context;
+import android.graphics.drawable.ShapeDrawable;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.SIZE;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewSwitcherMeasureTest {
+    private static final int PADDING = 10;
+
+    private ViewSwitcher mViewSwitcher;
+    private CountingPagerAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mViewSwitcher = attachViewSwitcher();
+        mViewSwitcher.setPadding(PADDING, PADDING, PADDING, PADDING);
+        mAdapter = new CountingPagerAdapter();
+        mViewSwitcher.setAdapter(mAdapter);
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void currentPageIsLaidOutInsidePadding() {
+        final View page = mAdapter.mPages.get(0);
+        assertEquals(PADDING, page.getLeft());
+        assertEquals(PADDING, page.getTop());
+        assertEquals(SIZE - PADDING, page.getRight());
+        assertEquals(SIZE - PADDING, page.getBottom());
+    }
+
+    @Test
+    public void currentPageIsLaidOutInsideForegroundPadding() {
+        final ShapeDrawable foreground = new ShapeDrawable();
+        foreground.setPadding(2 * PADDING, 0, 0, 2 * PADDING);
+        mViewSwitcher.setForeground(foreground);
+        layout(mViewSwitcher);
+
+        final View page = mAdapter.mPages.get(0);
+        assertEquals(2 * PADDING, page.getLeft());
+        assertEquals(PADDING, page.getTop());
+        assertEquals(SIZE - PADDING, page.getRight());
+        assertEquals(SIZE - 2 * PADDING, page.getBottom());
+    }
+
+    @Test
+    public void currentPageIsNotMeasuredAgainWithSameSpecs() {
+        final CountingView page = mAdapter.mPages.get(0);
+        final int measureCount = page.mMeasureCount;
+
+        layout(mViewSwitcher);
+
+        assertEquals(measureCount, page.mMeasureCount);
+    }
+
+    @Test
+    public void prewarmedPageIsNotMeasured() {
+        mViewSwitcher.setPrewarmLimit(1);
+        mViewSwitcher.prewarmItem(1);
+        mViewSwitcher.requestLayout();
+        layout(mViewSwitcher);
+
+        final CountingView prewarmed = mAdapter.mPages.get(1);
+        assertEquals(0, prewarmed.mMeasureCount);
+        assertEquals(0, prewarmed.getWidth());
+        assertEquals(0, prewarmed.getHeight());
+    }
+
+    @Test
+    public void warmedUpPageIsReadyBesideTheSwitcher() {
+        mViewSwitcher.setPrewarmLimit(1);
+        mViewSwitcher.setWarmUpPrewarmedPages(true);
+        mViewSwitcher.prewarmItem(1);
+        layout(mViewSwitcher);
+        mViewSwitcher.warmUpNextPrewarmedItem();
+
+        final CountingView warm = mAdapter.mPages.get(1);
+        assertEquals(1, warm.mMeasureCount);
+        assertEquals(SIZE + PADDING, warm.getLeft());
+        assertEquals(SIZE - 2 * PADDING, warm.getWidth());
+
+        mViewSwitcher.setCurrentItem(1);
+        layout(mViewSwitcher);
+
+        assertEquals(1, warm.mMeasureCount);
+        assertEquals(PADDING, warm.getLeft());
+    }
+
+    private static class CountingView extends View {
+        int mMeasureCount;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    private static class CountingPagerAdapter extends PagerAdapter {
+        final List<CountingView> mPages = new ArrayList<>();
+
+        @Override
+        public int getCount() {
+            return 3;
+        }
+
+        @NonNull
+        @Override
+        public Object instantiateItem(@NonNull ViewGroup container, int position) {
+            final CountingView page = new CountingView(container.getContext());
+            mPages.add(page);
+            container.addView(page);
+            return page;
+        }
+
+        @Override
+        public void destroyItem(@NonNull ViewGroup container, int position,
+                                @NonNull Object object) {
+            container.removeView((View) object);
+        }
+
+        @Override
+        public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+            return view == object;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewSwitcherPageStateTest {
+    private Activity mActivity;
+    private ViewSwitcher mViewSwitcher;
+    private StateSavingPagerAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+        mViewSwitcher = attachViewSwitcher(mActivity);
+        mAdapter = new StateSavingPagerAdapter();
+        mViewSwitcher.setAdapter(mAdapter);
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void hiddenPagesAreCapturedOnceAndOnlyCurrentPageAtSaveTime() {
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.setCurrentItem(2);
+        mViewSwitcher.setCurrentItem(3);
+        assertEquals(Arrays.asList("a", "b", "c"), mAdapter.mSaved);
+        mAdapter.mSaved.clear();
+
+        mViewSwitcher.onSaveInstanceState();
+
+        assertEquals(Collections.singletonList("d"), mAdapter.mSaved);
+    }
+
+    @Test
+    public void capturedStatesAreRestoredIntoNewPages() {
+        mViewSwitcher.setCurrentItem(1);
+        final Parcelable state = parcel(mViewSwitcher.onSaveInstanceState());
+
+        final ViewSwitcher restored = attachViewSwitcher(mActivity);
+        final StateSavingPagerAdapter adapter = new StateSavingPagerAdapter();
+        restored.setAdapter(adapter);
+        restored.onRestoreInstanceState(state);
+        layout(restored);
+        restored.setCurrentItem(0);
+
+        assertEquals(Arrays.asList("b", "a"), adapter.mRestored);
+    }
+
+    @Test
+    public void statesOfRemovedItemsAreDropped() {
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.setCurrentItem(2);
+
+        // b is removed while its state is captured, and c, the current item, moves.
+        mAdapter.setItems("a", "c", "d");
+        layout(mViewSwitcher);
+        mAdapter.setItems("a", "b", "c", "d");
+        layout(mViewSwitcher);
+        mViewSwitcher.setCurrentItem(1);
+        mViewSwitcher.setCurrentItem(0);
+
+        assertEquals(Collections.singletonList("a"), mAdapter.mRestored);
+    }
+
+    private static Parcelable parcel(Parcelable state) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(state, 0);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(ViewSwitcher.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static class StateSavingPagerAdapter extends TestPagerAdapter
+            implements ViewSwitcher.PageStateSaver {
+        final List<String> mSaved = new ArrayList<>();
+        final List<String> mRestored = new ArrayList<>();
+
+        StateSavingPagerAdapter() {
+            super("a", "b", "c", "d");
+        }
+
+        @Nullable
+        @Override
+        public Parcelable savePageState(int position, @NonNull Object object) {
+            final String item = (String) ((View) object).getTag();
+            mSaved.add(item);
+            final Bundle state = new Bundle();
+            state.putString("item", item);
+            return state;
+        }
+
+        @Override
+        public void restorePageState(int position, @NonNull Object object,
+                                     @NonNull Parcelable state) {
+            mRestored.add(((Bundle) state).getString("item"));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package androidx.viewpager.widget;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.SIZE;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.attachViewSwitcher;
+import static androidx.viewpager.widget.ViewSwitcherTestUtils.layout;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewSwitcherRecycledViewPoolTest {
+    private static final int ITEM_HEIGHT = 10;
+    private static final int ITEM_COUNT = 50;
+
+    private ViewSwitcher mViewSwitcher;
+    private int mCreatedViewHolders;
+
+    @Before
+    public void setUp() {
+        mViewSwitcher = attachViewSwitcher();
+        mViewSwitcher.setInjectRecycledViewPool(true);
+        // Room for a whole screen of items, the default keeps only 5 per view type.
+        mViewSwitcher.getRecycledViewPool().setMaxRecycledViews(0, SIZE / ITEM_HEIGHT * 2);
+        mViewSwitcher.setAdapter(new RecyclerPagerAdapter());
+        layout(mViewSwitcher);
+    }
+
+    @Test
+    public void pagesShareThePool() {
+        assertSame(mViewSwitcher.getRecycledViewPool(), currentPage().getRecycledViewPool());
+    }
+
+    @Test
+    public void nextPageReusesItemViewsOfDestroyedPage() {
+        final int firstScreen = mCreatedViewHolders;
+        assertTrue(firstScreen > 0);
+
+        mViewSwitcher.setCurrentItem(1);
+        layout(mViewSwitcher);
+
+        assertSame(mViewSwitcher.getRecycledViewPool(), currentPage().getRecycledViewPool());
+        assertEquals(firstScreen, mCreatedViewHolders);
+    }
+
+    private RecyclerView currentPage() {
+        return (RecyclerView) mViewSwitcher.getChildAt(0);
+    }
+
+    private class RecyclerPagerAdapter extends PagerAdapter {
+        @Override
+        public int getCount() {
+            return 3;
+        }
+
+        @NonNull
+        @Override
+        public Object instantiateItem(@NonNull ViewGroup container, int position) {
+            final RecyclerView page = new RecyclerView(container.getContext());
+            page.setLayoutManager(new LinearLayoutManager(container.getContext()));
+            page.setAdapter(new ItemAdapter());
+            container.addView(page);
+            return page;
+        }
+
+        @Override
+        public void destroyItem(@NonNull ViewGroup container, int position,
+                                @NonNull Object object) {
+            container.removeView((View) object);
+        }
+
+        @Override
+        public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+            return view == object;
+        }
+    }
+
+    private class ItemAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent,
+                                                          int viewType) {
+            mCreatedViewHolders++;
+            final View view = new View(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ITEM_HEIGHT));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return ITEM_COUNT;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import com.fiberthemax.viewswitcher.TabLayoutMediator;
+import com.google.android.material.R;
+import com.google.android.material.tabs.TabLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Runs long random sequences of operations against a ViewSwitcher and checks its invariants
+ * after each one. Failures report the seed and the last operations. Runs use a fixed seed so that
+ * they are reproducible, pass another one with {@code -DviewSwitcherSoakSeed=<seed>} to explore
+ * other sequences or replay a failure.
+ *
+ * <p>Leaks are caught by exact counts that are always checked: live pages, children, tabs,
+ * listeners and the sizes of the ViewSwitcher's per-item bookkeeping. Timings and heap usage vary
+ * between machines, so their growth is only measured on request: pass
+ * {@code -DviewSwitcherSoakReport=true} to print it, {@code -DviewSwitcherSoakStrict=true} to fail
+ * on it.</p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewSwitcherSoakTest {
+    private static final int OPERATIONS = 3000;
+    private static final int MAX_ITEMS = 6;
+    private static final int ITEM_POOL = 10;
+    private static final int SIZE = 100;
+    private static final int HISTORY = 20;
+    private static final long DEFAULT_SEED = 20191104L;
+    /**
+     * Generous bounds, these only need to catch work or memory that grows with the number of
+     * operations run. Only enforced in strict runs.
+     */
+    private static final int MAX_COST_GROWTH = 5;
+    private static final long COST_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_HEAP_GROWTH = 16 * 1024 * 1024;
+
+    private static final int OP_SET_CURRENT_ITEM = 0;
+    private static final int OP_REPLACE_ITEMS = 1;
+    private static final int OP_NOTIFY = 2;
+    private static final int OP_SAVE_RESTORE = 3;
+    private static final int OP_DETACH_ATTACH = 4;
+    private static final int OP_TOGGLE_MEDIATOR = 5;
+    private static final int OP_SWAP_ADAPTER = 6;
+    private static final int OP_COUNT = 7;
+
+    private Activity mActivity;
+    private FrameLayout mContainer;
+    private TabLayout mTabLayout;
+    private ViewSwitcher mViewSwitcher;
+    private TestPagerAdapter mAdapter;
+    private TabLayoutMediator mMediator;
+    private PageLeakTracker mTracker;
+    private Random mRandom;
+    private final List<TestPagerAdapter> mAdapters = new ArrayList<>();
+    private final ArrayDeque<String> mHistory = new ArrayDeque<>();
+    private long mSeed;
+    private boolean mReport;
+    private boolean mStrict;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+        mActivity.setTheme(R.style.Theme_MaterialComponents_Light);
+        mContainer = new FrameLayout(mActivity);
+        mTabLayout = new TabLayout(mActivity);
+        mActivity.setContentView(mContainer);
+        mTracker = new PageLeakTracker();
+
+        mSeed = Long.getLong("viewSwitcherSoakSeed", DEFAULT_SEED);
+        mReport = Boolean.getBoolean("viewSwitcherSoakReport");
+        mStrict = Boolean.getBoolean("viewSwitcherSoakStrict");
+        mRandom = new Random(mSeed);
+
+        createViewSwitcher();
+        setAdapter(new TestPagerAdapter(randomItems()));
+        mContainer.addView(mViewSwitcher);
+        layout();
+    }
+
+    @Test
+    public void randomOperationsKeepInvariants() {
+        final boolean measure = mReport || mStrict;
+        final long[] costs = new long[OPERATIONS];
+        long baselineHeap = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (measure && i == OPERATIONS / 4) {
+                // Measured after warming up, so class loading does not count as growth.
+                baselineHeap = usedHeap();
+            }
+            final int op = mRandom.nextInt(OP_COUNT);
+            final long start = System.nanoTime();
+            runOperation(op);
+            layout();
+            costs[i] = System.nanoTime() - start;
+            checkInvariants(i);
+        }
+
+        if (measure) {
+            checkGrowth(costs, usedHeap() - baselineHeap);
+        }
+        if (!mTracker.findRetainedPages(mViewSwitcher, mAdapter, mTabLayout).isEmpty()) {
+            failWithHistory("Destroyed pages were retained: "
+                    + mTracker.findRetainedPages(mViewSwitcher, mAdapter, mTabLayout));
+        }
+    }
+
+    private void checkGrowth(long[] costs, long heapGrowth) {
+        final long early = meanCost(costs, OPERATIONS / 4, OPERATIONS / 2);
+        final long late = meanCost(costs, OPERATIONS * 3 / 4, OPERATIONS);
+        if (mReport) {
+            System.out.println("ViewSwitcherSoakTest seed=" + mSeed + " heapGrowth="
+                    + heapGrowth + "B meanCost=" + early + "ns->" + late + "ns");
+        }
+        if (mStrict && heapGrowth > MAX_HEAP_GROWTH) {
+            failWithHistory("Heap grew by " + heapGrowth + " bytes");
+        }
+        if (mStrict && late > early * MAX_COST_GROWTH + COST_SLACK_NANOS) {
+            failWithHistory("Mean operation cost grew from " + early + "ns to " + late + "ns");
+        }
+    }
+
+    private void runOperation(int op) {
+        switch (op) {
+            case OP_SET_CURRENT_ITEM: {
+                final int item = mRandom.nextInt(MAX_ITEMS + 1);
+                record("setCurrentItem(" + item + ")");
+                mViewSwitcher.setCurrentItem(item);
+                break;
+            }
+            case OP_REPLACE_ITEMS: {
+                final List<String> items = randomItems();
+                record("setItems(" + items + ")");
+                mAdapter.setItems(items);
+                break;
+            }
+            case OP_NOTIFY:
+                record("notifyDataSetChanged()");
+                mAdapter.notifyDataSetChanged();
+                break;
+            case OP_SAVE_RESTORE:
+                record("saveRestore()");
+                saveRestore();
+                break;
+            case OP_DETACH_ATTACH: {
+                final int policy = mRandom.nextInt(3);
+                final boolean idle = mRandom.nextBoolean();
+                record("detachAttach(policy=" + policy + ", idle=" + idle + ")");
+                mViewSwitcher.setDetachPolicy(policy);
+                mContainer.removeView(mViewSwitcher);
+                if (idle) {
+                    // Long enough for DETACH_POLICY_RELEASE_PAGE to release the page.
+                    ShadowLooper.idleMainLooper(2, TimeUnit.SECONDS);
+                }
+                mContainer.addView(mViewSwitcher);
+                break;
+            }
+            case OP_TOGGLE_MEDIATOR:
+                record(mMediator == null ? "attachMediator()" : "detachMediator()");
+                if (mMediator == null) {
+                    attachMediator();
+                } else {
+                    detachMediator();
+                }
+                break;
+            case OP_SWAP_ADAPTER: {
+                final List<String> items = randomItems();
+                record("setAdapter(" + items + ")");
+                final boolean mediatorAttached = mMediator != null;
+                detachMediator();
+                setAdapter(new TestPagerAdapter(items));
+                if (mediatorAttached) {
+                    attachMediator();
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+
+    private void saveRestore() {
+        final SparseArray<Parcelable> state = new SparseArray<>();
+        mViewSwitcher.saveHierarchyState(state);
+        final int savedItem = mViewSwitcher.getCurrentItem();
+        final boolean mediatorAttached = mMediator != null;
+
+        // Tear down as the old activity would, then rebuild as the new one.
+        detachMediator();
+        mViewSwitcher.setAdapter(null);
+        mContainer.removeView(mViewSwitcher);
+        createViewSwitcher();
+        mViewSwitcher.restoreHierarchyState(state);
+        setAdapter(new TestPagerAdapter(mAdapter.getItems()));
+        if (mediatorAttached) {
+            attachMediator();
+        }
+        mContainer.addView(mViewSwitcher);
+        layout();
+
+        final int count = mAdapter.getCount();
+        if (count > 0 && mViewSwitcher.getCurrentItem() != Math.min(savedItem, count - 1)) {
+            failWithHistory("Restored item " + mViewSwitcher.getCurrentItem()
+                    + ", expected " + Math.min(savedItem, count - 1));
+        }
+    }
+
+    private void checkInvariants(int index) {
+        final int count = mAdapter.getCount();
+        final int expectedLivePages = count > 0 ? 1 : 0;
+
+        int instantiated = 0;
+        int destroyed = 0;
+        for (TestPagerAdapter adapter : mAdapters) {
+            instantiated += adapter.mInstantiateCount;
+            destroyed += adapter.mDestroyCount;
+        }
+        if (instantiated - destroyed != expectedLivePages) {
+            failWithHistory("Operation " + index + ": " + instantiated + " pages instantiated and "
+                    + destroyed + " destroyed, expected " + expectedLivePages + " live");
+        }
+        if (mTracker.getLivePageCount() != expectedLivePages) {
+            failWithHistory("Operation " + index + ": " + mTracker.getLivePageCount()
+                    + " live pages, expected " + expectedLivePages);
+        }
+        if (mViewSwitcher.getChildCount() != expectedLivePages) {
+            failWithHistory("Operation " + index + ": " + mViewSwitcher.getChildCount()
+                    + " children, expected " + expectedLivePages);
+        }
+        final int expectedListeners = mMediator != null ? 1 : 0;
+        if (mViewSwitcher.getPageChangeListenerCount() != expectedListeners
+                || mViewSwitcher.getDataSetChangeListenerCount() != expectedListeners) {
+            failWithHistory("Operation " + index + ": "
+                    + mViewSwitcher.getPageChangeListenerCount() + " page change and "
+                    + mViewSwitcher.getDataSetChangeListenerCount()
+                    + " data set change listeners, expected " + expectedListeners);
+        }
+        // Kept per item, so bounded by the adapter whatever was visited before.
+        if (mViewSwitcher.getPageFocusCount() > count
+                || mViewSwitcher.getPageStateCount() > count) {
+            failWithHistory("Operation " + index + ": focus remembered for "
+                    + mViewSwitcher.getPageFocusCount() + " and states kept for "
+                    + mViewSwitcher.getPageStateCount() + " pages of " + count + " items");
+        }
+        if (mViewSwitcher.getPageScopeCount() > expectedLivePages) {
+            failWithHistory("Operation " + index + ": " + mViewSwitcher.getPageScopeCount()
+                    + " page scopes for " + expectedLivePages + " live pages");
+        }
+        if (count > 0 && mViewSwitcher.getCurrentItem() >= count) {
+            failWithHistory("Operation " + index + ": current item "
+                    + mViewSwitcher.getCurrentItem() + " out of " + count);
+        }
+        if (mMediator != null) {
+            if (mTabLayout.getTabCount() != count) {
+                failWithHistory("Operation " + index + ": " + mTabLayout.getTabCount()
+                        + " tabs for " + count + " items");
+            }
+            if (count > 0 && mTabLayout.getSelectedTabPosition()
+                    != mViewSwitcher.getCurrentItem()) {
+                failWithHistory("Operation " + index + ": tab "
+                        + mTabLayout.getSelectedTabPosition() + " selected for item "
+                        + mViewSwitcher.getCurrentItem());
+            }
+        }
+    }
+
+    private void createViewSwitcher() {
+        mViewSwitcher = new ViewSwitcher(mActivity);
+        mViewSwitcher.setId(1);
+        mViewSwitcher.setPageLeakTracker(mTracker);
+    }
+
+    private void setAdapter(TestPagerAdapter adapter) {
+        mAdapter = adapter;
+        mAdapters.add(adapter);
+        mViewSwitcher.setAdapter(adapter);
+    }
+
+    private void attachMediator() {
+        mMediator = new TabLayoutMediator(mTabLayout, mViewSwitcher);
+        mMediator.attach();
+    }
+
+    private void detachMediator() {
+        if (mMediator != null) {
+            mMediator.detach();
+            mMediator = null;
+        }
+    }
+
+    private List<String> randomItems() {
+        final List<String> pool = new ArrayList<>();
+        for (int i = 0; i < ITEM_POOL; i++) {
+            pool.add("item" + i);
+        }
+        Collections.shuffle(pool, mRandom);
+        return new ArrayList<>(pool.subList(0, mRandom.nextInt(MAX_ITEMS + 1)));
+    }
+
+    private void layout() {
+        final int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        mViewSwitcher.measure(spec, spec);
+        mViewSwitcher.layout(0, 0, SIZE, SIZE);
+    }
+
+    private void record(String operation) {
+        if (mHistory.size() == HISTORY) {
+            mHistory.removeFirst();
+        }
+        mHistory.addLast(operation);
+    }
+
+    private void failWithHistory(String message) {
+        fail(message + "\nSeed: " + mSeed + "\nLast operations: " + mHistory);
+    }
+
+    private static long meanCost(long[] costs, int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total += costs[i];
+        }
+        return total / (to - from);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,44 @@
+package androidx.viewpager.widget;
+
+import android.app.Activity;
+import android.view.View;
+
+import org.robolectric.Robolectric;
+
+/**
+ * The fixture shared by the ViewSwitcher tests: a ViewSwitcher set as the content of an activity
+ * and laid out at a fixed size.
+ */
+final class ViewSwitcherTestUtils {
+    static final int SIZE = 100;
+
+    private ViewSwitcherTestUtils() {
+    }
+
+    /**
+     * Returns a ViewSwitcher set as the content of a new activity.
+     */
+    static ViewSwitcher attachViewSwitcher() {
+        return attachViewSwitcher(Robolectric.buildActivity(Activity.class).setup().get());
+    }
+
+    /**
+     * Returns a ViewSwitcher set as the content of the given activity. It has an id, as fragment
+     * adapters and saved state require.
+     */
+    static ViewSwitcher attachViewSwitcher(Activity activity) {
+        final ViewSwitcher viewSwitcher = new ViewSwitcher(activity);
+        viewSwitcher.setId(1);
+        activity.setContentView(viewSwitcher);
+        return viewSwitcher;
+    }
+
+    /**
+     * Measures and lays out the ViewSwitcher at {@link #SIZE}, as a layout pass would.
+     */
+    static void layout(ViewSwitcher viewSwitcher) {
+        final int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        viewSwitcher.measure(spec, spec);
+        viewSwitcher.layout(0, 0, SIZE, SIZE);
+    }
+}